@@ -0,0 +1,38 @@
+package ch.tbz.beatlog.common;
+
+import java.util.List;
+
+public class BatchResult {
+    private final int accepted;
+    private final List<RecordError> errors;
+
+    public BatchResult(int accepted, List<RecordError> errors) {
+        this.accepted = accepted;
+        this.errors = errors;
+    }
+
+    public int getAccepted() { return accepted; }
+    public List<RecordError> getErrors() { return errors; }
+    public boolean hasErrors() { return !errors.isEmpty(); }
+
+    public static class RecordError {
+        private final int index;
+        private final String id;
+        private final String message;
+
+        public RecordError(int index, String id, String message) {
+            this.index = index;
+            this.id = id;
+            this.message = message;
+        }
+
+        public int getIndex() { return index; }
+        public String getId() { return id; }
+        public String getMessage() { return message; }
+
+        @Override
+        public String toString() {
+            return "#" + index + (id == null ? "" : " [" + id + "]") + ": " + message;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package ch.tbz.beatlog.common;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gemeinsames Wörterbuch für Werte mit wenigen Ausprägungen (Mood, Genre, Tags).
+ * Jeder Wert bekommt einen kleinen int-Code und eine kanonische String-Instanz.
+ * Zusätzlich gibt es einen "gefalteten" Code, der Gross-/Kleinschreibung ignoriert,
+ * damit Vergleiche wie equalsIgnoreCase zu int-Vergleichen werden.
+ */
+public final class Dictionary {
+
+    public static final Dictionary MOODS = new Dictionary();
+    public static final Dictionary GENRES = new Dictionary();
+    public static final Dictionary TAGS = new Dictionary();
+
+    public static final int NONE = -1;
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private final Map<String, Integer> foldedCodes = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[16];
+    private volatile int[] folded = new int[16];
+    private int size;
+    private int foldedSize;
+
+    public int code(String value) {
+        if (value == null) return NONE;
+        Integer c = codes.get(value);
+        return c != null ? c : add(value);
+    }
+
+    public String intern(String value) {
+        return value == null ? null : value(code(value));
+    }
+
+    public String value(int code) {
+        return code == NONE ? null : values[code];
+    }
+
+    public int foldedCode(int code) {
+        return code == NONE ? NONE : folded[code];
+    }
+
+    // Nur nachschlagen, nicht eintragen: unbekannte Werte liefern NONE
+    public int lookup(String value) {
+        if (value == null) return NONE;
+        Integer c = codes.get(value);
+        return c == null ? NONE : c;
+    }
+
+    public int lookupFolded(String value) {
+        if (value == null) return NONE;
+        Integer f = foldedCodes.get(fold(value));
+        return f == null ? NONE : f;
+    }
+
+    public synchronized int foldedSize() { return foldedSize; }
+
+    private synchronized int add(String value) {
+        Integer existing = codes.get(value);
+        if (existing != null) return existing;
+        int code = size;
+        if (code == values.length) {
+            values = Arrays.copyOf(values, code * 2);
+            folded = Arrays.copyOf(folded, code * 2);
+        }
+        values[code] = value;
+        Integer f = foldedCodes.get(fold(value));
+        if (f == null) {
+            f = foldedSize++;
+            foldedCodes.put(fold(value), f);
+        }
+        folded[code] = f;
+        size++;
+        codes.put(value, code);
+        return code;
+    }
+
+    private static String fold(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
@@ -1,10 +1,114 @@
 package ch.tbz.beatlog.common;
 
-import java.util.UUID;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Zeitlich sortierte IDs im Snowflake-Stil, 64 Bit:
+ * <pre>
+ * 41 Bit Millisekunden seit EPOCH | 10 Bit Knoten | 12 Bit Sequenz   (oberstes Bit immer 0)
+ * </pre>
+ * Der Knoten wird beim Laden der Klasse einmal per {@link SecureRandom} gezogen und
+ * unterscheidet Prozesse bzw. Geräte. Millisekunde und Sequenz kommen aus einem einzigen
+ * Zähler, der per CAS in Blöcken vergeben wird; jeder Thread verbraucht seinen Block ohne
+ * gemeinsamen Zustand. Innerhalb eines Prozesses sind die IDs damit eindeutig, egal wie
+ * viele Threads es gibt oder gab, und innerhalb eines Threads streng monoton. Zwischen
+ * Prozessen sind sie nur eindeutig, solange sich die Knoten unterscheiden (zwei Prozesse
+ * teilen einen Knoten mit Wahrscheinlichkeit 1/1024); das ist schwächer als bei zufälligen
+ * UUIDs. Läuft die Uhr zurück oder die Sequenz über, wird auf der letzten Millisekunde
+ * weitergezählt. Ein Block, dessen Millisekunde schon vorbei ist, wird verworfen, damit
+ * die Zeit in der ID aktuell bleibt.
+ *
+ * <p>Als String: 13 Zeichen Crockford-Base32, feste Breite, dadurch sortieren die
+ * Strings gleich wie die Zahlen.
+ */
 public final class Ids {
     private Ids() {}
+
+    // 2024-01-01T00:00:00Z; 41 Bit reichen damit bis ins Jahr 2093
+    private static final long EPOCH = 1_704_067_200_000L;
+    private static final int NODE_BITS = 10;
+    private static final int SEQUENCE_BITS = 12;
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final int BLOCK = 64;
+    private static final int LENGTH = 13;
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final byte[] DECODE = new byte[128];
+
+    static {
+        java.util.Arrays.fill(DECODE, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) DECODE[ALPHABET[i]] = (byte) i;
+    }
+
+    private static final long NODE = new SecureRandom().nextInt(1 << NODE_BITS);
+
+    // Zähler ohne Knoten: Millisekunde << SEQUENCE_BITS | Sequenz, Ende des zuletzt reservierten Blocks
+    private static final AtomicLong lastReserved = new AtomicLong();
+
+    private static final class Block {
+        long next;
+        long end;  // exklusiv
+
+        long next() {
+            long nowMillis = System.currentTimeMillis() - EPOCH;
+            if (next >= end || (next >>> SEQUENCE_BITS) < nowMillis) reserve(nowMillis << SEQUENCE_BITS);
+            long counter = next++;
+            return ((counter >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS))
+                    | (NODE << SEQUENCE_BITS) | (counter & SEQUENCE_MASK);
+        }
+
+        private void reserve(long now) {
+            while (true) {
+                long last = lastReserved.get();
+                long start = Math.max(last + 1, now);
+                if (lastReserved.compareAndSet(last, start + BLOCK - 1)) {
+                    next = start;
+                    end = start + BLOCK;
+                    return;
+                }
+            }
+        }
+    }
+
+    private static final ThreadLocal<Block> BLOCKS = ThreadLocal.withInitial(Block::new);
+
     public static String newId() {
-        return UUID.randomUUID().toString();
+        return encode(nextLong());
+    }
+
+    public static long nextLong() {
+        return BLOCKS.get().next();
+    }
+
+    public static Instant timestampOf(long id) {
+        return Instant.ofEpochMilli((id >>> (NODE_BITS + SEQUENCE_BITS)) + EPOCH);
+    }
+
+    public static String encode(long id) {
+        char[] out = new char[LENGTH];
+        for (int i = LENGTH - 1; i >= 0; i--) {
+            out[i] = ALPHABET[(int) (id & 31)];
+            id >>>= 5;
+        }
+        return new String(out);
+    }
+
+    /** Kehrwert von {@link #encode}; nur die kanonische Form (Grossbuchstaben, 13 Zeichen). */
+    public static long decode(String id) {
+        if (!isCompact(id)) throw new IllegalArgumentException("Keine kompakte ID: " + id);
+        long value = 0;
+        for (int i = 0; i < LENGTH; i++) value = (value << 5) | DECODE[id.charAt(i)];
+        return value;
+    }
+
+    public static boolean isCompact(String id) {
+        if (id == null || id.length() != LENGTH) return false;
+        for (int i = 0; i < LENGTH; i++) {
+            char c = id.charAt(i);
+            if (c >= 128 || DECODE[c] < 0) return false;
+        }
+        // erstes Zeichen trägt nur die obersten 4 Bit
+        return DECODE[id.charAt(0)] < 16;
     }
 }
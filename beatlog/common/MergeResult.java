@@ -0,0 +1,76 @@
+package ch.tbz.beatlog.common;
+
+import ch.tbz.beatlog.domain.ListeningSession;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Ergebnis eines zusammenführenden Imports: was neu, geändert, gelöscht oder gleich war. */
+public class MergeResult {
+    private final int songsInserted;
+    private final int songsUpdated;
+    private final int songsDeleted;
+    private final int songsUnchanged;
+    private final int sessionsInserted;
+    private final int sessionsUpdated;
+    private final int sessionsDeleted;
+    private final int sessionsUnchanged;
+    // Neu eingefügte Sessions, damit Listener inkrementell nachführen können
+    private final List<ListeningSession> insertedSessions;
+
+    public MergeResult(int songsInserted, int songsUpdated, int songsDeleted, int songsUnchanged,
+                       int sessionsInserted, int sessionsUpdated, int sessionsDeleted, int sessionsUnchanged) {
+        this(songsInserted, songsUpdated, songsDeleted, songsUnchanged,
+                sessionsInserted, sessionsUpdated, sessionsDeleted, sessionsUnchanged, List.of());
+    }
+
+    public MergeResult(int songsInserted, int songsUpdated, int songsDeleted, int songsUnchanged,
+                       int sessionsInserted, int sessionsUpdated, int sessionsDeleted, int sessionsUnchanged,
+                       List<ListeningSession> insertedSessions) {
+        this.songsInserted = songsInserted;
+        this.songsUpdated = songsUpdated;
+        this.songsDeleted = songsDeleted;
+        this.songsUnchanged = songsUnchanged;
+        this.sessionsInserted = sessionsInserted;
+        this.sessionsUpdated = sessionsUpdated;
+        this.sessionsDeleted = sessionsDeleted;
+        this.sessionsUnchanged = sessionsUnchanged;
+        this.insertedSessions = insertedSessions;
+    }
+
+    public int getSongsInserted() { return songsInserted; }
+    public int getSongsUpdated() { return songsUpdated; }
+    public int getSongsDeleted() { return songsDeleted; }
+    public int getSongsUnchanged() { return songsUnchanged; }
+    public int getSessionsInserted() { return sessionsInserted; }
+    public int getSessionsUpdated() { return sessionsUpdated; }
+    public int getSessionsDeleted() { return sessionsDeleted; }
+    public int getSessionsUnchanged() { return sessionsUnchanged; }
+    public List<ListeningSession> getInsertedSessions() { return insertedSessions; }
+
+    public boolean hasChanges() {
+        return songsInserted + songsUpdated + songsDeleted
+                + sessionsInserted + sessionsUpdated + sessionsDeleted > 0;
+    }
+
+    // Sessions wurden geändert oder gelöscht, nicht nur ergänzt
+    public boolean hasSessionRewrites() {
+        return sessionsUpdated + sessionsDeleted > 0;
+    }
+
+    public MergeResult plus(MergeResult o) {
+        List<ListeningSession> inserted = new ArrayList<>(insertedSessions);
+        inserted.addAll(o.insertedSessions);
+        return new MergeResult(songsInserted + o.songsInserted, songsUpdated + o.songsUpdated,
+                songsDeleted + o.songsDeleted, songsUnchanged + o.songsUnchanged,
+                sessionsInserted + o.sessionsInserted, sessionsUpdated + o.sessionsUpdated,
+                sessionsDeleted + o.sessionsDeleted, sessionsUnchanged + o.sessionsUnchanged, inserted);
+    }
+
+    @Override
+    public String toString() {
+        return "Songs: " + songsInserted + " neu, " + songsUpdated + " geändert, " + songsDeleted + " gelöscht, "
+                + songsUnchanged + " unverändert; Sessions: " + sessionsInserted + " neu, " + sessionsUpdated
+                + " geändert, " + sessionsDeleted + " gelöscht, " + sessionsUnchanged + " unverändert";
+    }
+}
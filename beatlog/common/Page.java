@@ -0,0 +1,50 @@
+package ch.tbz.beatlog.common;
+
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+public class Page<T> {
+    private final List<T> items;
+    private final int offset;
+    private final int total;
+
+    public Page(List<T> items, int offset, int total) {
+        this.items = items;
+        this.offset = offset;
+        this.total = total;
+    }
+
+    /**
+     * Schneidet eine Seite aus einer bereits sortierten Liste, ohne zu kopieren.
+     * Bei DESCENDING wird die Liste von hinten gelesen.
+     */
+    public static <T> Page<T> of(List<T> sorted, int offset, int limit, SortOrder order) {
+        if (offset < 0) throw new ValidationException("Offset darf nicht negativ sein.");
+        if (limit < 0) throw new ValidationException("Limit darf nicht negativ sein.");
+        int total = sorted.size();
+        int from = Math.min(offset, total);
+        int to = (int) Math.min((long) from + limit, total);
+        List<T> items = order == SortOrder.DESCENDING
+                ? new Reversed<>(sorted.subList(total - to, total - from))
+                : sorted.subList(from, to);
+        return new Page<>(items, offset, total);
+    }
+
+    public List<T> getItems() { return items; }
+    public int getOffset() { return offset; }
+    public int getTotal() { return total; }
+    public boolean hasNext() { return offset + items.size() < total; }
+
+    private static final class Reversed<T> extends AbstractList<T> implements RandomAccess {
+        private final List<T> list;
+
+        Reversed(List<T> list) { this.list = list; }
+
+        @Override
+        public T get(int index) { return list.get(list.size() - 1 - index); }
+
+        @Override
+        public int size() { return list.size(); }
+    }
+}
@@ -0,0 +1,6 @@
+package ch.tbz.beatlog.common;
+
+public enum SortOrder {
+    ASCENDING,
+    DESCENDING
+}
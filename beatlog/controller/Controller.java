@@ -1,14 +1,17 @@
 package ch.tbz.beatlog.controller;
 
+import ch.tbz.beatlog.common.BatchResult;
 import ch.tbz.beatlog.common.Ids;
+import ch.tbz.beatlog.common.Page;
+import ch.tbz.beatlog.common.SortOrder;
 import ch.tbz.beatlog.domain.ListeningSession;
+import ch.tbz.beatlog.domain.SessionWithSong;
 import ch.tbz.beatlog.domain.Song;
+import ch.tbz.beatlog.domain.SongStats;
 import ch.tbz.beatlog.service.LibraryService;
 
 import java.time.Instant;
-import java.util.List;
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
 
 public class Controller {
     private final LibraryService service;
@@ -25,6 +28,14 @@ public class Controller {
         return id;
     }
 
+    // Songs ohne ID bekommen eine neue
+    public BatchResult importSongs(Collection<Song> songs) {
+        for (Song s : songs) {
+            if (s != null && (s.getId() == null || s.getId().isBlank())) s.setId(Ids.newId());
+        }
+        return service.addSongs(songs);
+    }
+
     public void updateSong(String id, String title, String artist, String genre, int year, int durationSec,
                            String mood, int rating, Set<String> tags) {
         Song s = new Song(id, title, artist, genre, year, durationSec, mood, rating, tags);
@@ -34,6 +45,9 @@ public class Controller {
     public void deleteSong(String id) { service.deleteSong(id); }
     public List<Song> getAllSongs() { return service.listSongs(); }
     public Optional<Song> getSong(String id) { return service.getSong(id); }
+    public List<Song> filterSongs(String mood, Integer minRating, String tag) {
+        return service.filterSongs(mood, minRating, tag);
+    }
 
     public void logListeningSession(String songId, String mood, String note, Integer ratingOverride) {
         ListeningSession s = new ListeningSession(
@@ -41,5 +55,31 @@ public class Controller {
         service.logSession(s);
     }
 
+    public BatchResult logListeningSessions(Collection<ListeningSession> sessions) {
+        List<ListeningSession> withIds = new ArrayList<>(sessions.size());
+        for (ListeningSession s : sessions) {
+            if (s != null && (s.getId() == null || s.getId().isBlank())) {
+                s = new ListeningSession(Ids.newId(), s.getSongId(), s.getTimestamp(),
+                        s.getMood(), s.getNote(), s.getRatingOverride());
+            }
+            withIds.add(s);
+        }
+        return service.logSessions(withIds);
+    }
+
     public List<ListeningSession> getAllSessions() { return service.listSessions(); }
+    public Page<ListeningSession> getSessionPage(int offset, int limit, SortOrder order) {
+        return service.pageSessions(offset, limit, order);
+    }
+    public Page<SessionWithSong> getSessionPageWithSongs(int offset, int limit, SortOrder order) {
+        return service.pageSessionsWithSongs(offset, limit, order);
+    }
+    public List<ListeningSession> getSessionsBetween(Instant from, Instant to) {
+        return service.sessionsBetween(from, to);
+    }
+    public List<ListeningSession> getLatestSessions(int n) { return service.latestSessions(n); }
+    public SongStats getSongStats(String songId) { return service.songStats(songId); }
+    public List<ListeningSession> getSessionsOfSong(String songId) { return service.sessionsOfSong(songId); }
+    public List<SessionWithSong> getAllSessionsWithSongs() { return service.listSessionsWithSongs(); }
+    public Page<Song> getSongPage(int offset, int limit) { return service.pageSongs(offset, limit); }
 }
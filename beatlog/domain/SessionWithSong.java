@@ -0,0 +1,16 @@
+package ch.tbz.beatlog.domain;
+
+import java.util.Optional;
+
+public class SessionWithSong {
+    private final ListeningSession session;
+    private final Song song; // null, wenn der Song gelöscht wurde
+
+    public SessionWithSong(ListeningSession session, Song song) {
+        this.session = session;
+        this.song = song;
+    }
+
+    public ListeningSession getSession() { return session; }
+    public Optional<Song> getSong() { return Optional.ofNullable(song); }
+}
@@ -1,5 +1,8 @@
 package ch.tbz.beatlog.domain;
 
+import ch.tbz.beatlog.common.Dictionary;
+
+import java.util.Arrays;
 import java.util.Objects;
 import java.util.Set;
 
@@ -14,6 +17,11 @@ public class Song {
     private int rating;         
     private Set<String> tags;   
 
+    // Gefaltete Wörterbuch-Codes (Gross-/Kleinschreibung egal) für schnelle Vergleiche
+    private transient int moodKey = Dictionary.NONE;
+    private transient int[] tagKeys = NO_KEYS;
+    private static final int[] NO_KEYS = new int[0];
+
     public Song() {} 
 
     public Song(String id, String title, String artist, String genre, int year,
@@ -21,12 +29,20 @@ public class Song {
         this.id = id;
         this.title = title;
         this.artist = artist;
-        this.genre = genre;
+        setGenre(genre);
         this.year = year;
         this.durationSec = durationSec;
-        this.mood = mood;
+        setMood(mood);
         this.rating = rating;
-        this.tags = tags;
+        setTags(tags);
+    }
+
+    // Für Instanzen, deren Felder ohne Setter befüllt wurden (z.B. von Gson)
+    public Song intern() {
+        setGenre(genre);
+        setMood(mood);
+        setTags(tags);
+        return this;
     }
 
     public String getId() { return id; }
@@ -39,7 +55,7 @@ public class Song {
     public void setArtist(String artist) { this.artist = artist; }
 
     public String getGenre() { return genre; }
-    public void setGenre(String genre) { this.genre = genre; }
+    public void setGenre(String genre) { this.genre = Dictionary.GENRES.intern(genre); }
 
     public int getYear() { return year; }
     public void setYear(int year) { this.year = year; }
@@ -48,13 +64,30 @@ public class Song {
     public void setDurationSec(int durationSec) { this.durationSec = durationSec; }
 
     public String getMood() { return mood; }
-    public void setMood(String mood) { this.mood = mood; }
+    public void setMood(String mood) {
+        int code = Dictionary.MOODS.code(mood);
+        this.mood = Dictionary.MOODS.value(code);
+        this.moodKey = Dictionary.MOODS.foldedCode(code);
+    }
+
+    public int getMoodKey() { return moodKey; }
 
     public int getRating() { return rating; }
     public void setRating(int rating) { this.rating = rating; }
 
     public Set<String> getTags() { return tags; }
-    public void setTags(Set<String> tags) { this.tags = tags; }
+    public void setTags(Set<String> tags) {
+        TagSet set = tags == null ? null : TagSet.of(tags);
+        this.tags = set;
+        this.tagKeys = set == null ? NO_KEYS : set.foldedKeys();
+    }
+
+    // Sortiert; nicht verändern
+    public int[] getTagKeys() { return tagKeys; }
+
+    public boolean hasTagKey(int key) {
+        return key != Dictionary.NONE && Arrays.binarySearch(tagKeys, key) >= 0;
+    }
 
     @Override
     public String toString() {
@@ -0,0 +1,37 @@
+package ch.tbz.beatlog.domain;
+
+import java.time.Instant;
+
+public class SongStats {
+    private final String songId;
+    private final int playCount;
+    private final Instant lastPlayed;              // null, wenn nie (mit Zeitstempel) gehört
+    private final Integer latestRatingOverride;    // Override der zeitlich letzten Session, die einen hat
+
+    public SongStats(String songId, int playCount, Instant lastPlayed, Integer latestRatingOverride) {
+        this.songId = songId;
+        this.playCount = playCount;
+        this.lastPlayed = lastPlayed;
+        this.latestRatingOverride = latestRatingOverride;
+    }
+
+    public static SongStats none(String songId) {
+        return new SongStats(songId, 0, null, null);
+    }
+
+    public String getSongId() { return songId; }
+    public int getPlayCount() { return playCount; }
+    public Instant getLastPlayed() { return lastPlayed; }
+    public Integer getLatestRatingOverride() { return latestRatingOverride; }
+
+    // Rating unter Berücksichtigung des letzten Overrides
+    public int effectiveRating(int songRating) {
+        return latestRatingOverride != null ? latestRatingOverride : songRating;
+    }
+
+    @Override
+    public String toString() {
+        return "SongStats{songId='" + songId + "', playCount=" + playCount + ", lastPlayed=" + lastPlayed +
+                ", latestRatingOverride=" + latestRatingOverride + "}";
+    }
+}
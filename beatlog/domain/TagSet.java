@@ -0,0 +1,70 @@
+package ch.tbz.beatlog.domain;
+
+import ch.tbz.beatlog.common.Dictionary;
+
+import java.util.*;
+
+/**
+ * Unveränderliches Tag-Set als Array von Wörterbuch-Codes (in Einfügereihenfolge).
+ * Ersetzt pro Song ein LinkedHashSet mit eigenen String-Instanzen.
+ */
+final class TagSet extends AbstractSet<String> {
+
+    private final int[] codes;
+
+    private TagSet(int[] codes) {
+        this.codes = codes;
+    }
+
+    static TagSet of(Collection<String> tags) {
+        if (tags instanceof TagSet t) return t;
+        int[] codes = new int[tags.size()];
+        int n = 0;
+        for (String tag : tags) {
+            if (tag == null) continue;
+            int code = Dictionary.TAGS.code(tag);
+            boolean dup = false;
+            for (int i = 0; i < n && !dup; i++) dup = codes[i] == code;
+            if (!dup) codes[n++] = code;
+        }
+        return new TagSet(n == codes.length ? codes : Arrays.copyOf(codes, n));
+    }
+
+    // Sortierte, eindeutige gefaltete Codes für Vergleiche ohne Gross-/Kleinschreibung
+    int[] foldedKeys() {
+        int[] keys = new int[codes.length];
+        for (int i = 0; i < codes.length; i++) keys[i] = Dictionary.TAGS.foldedCode(codes[i]);
+        Arrays.sort(keys);
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) if (n == 0 || keys[n - 1] != keys[i]) keys[n++] = keys[i];
+        return n == keys.length ? keys : Arrays.copyOf(keys, n);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (!(o instanceof String s)) return false;
+        int code = Dictionary.TAGS.lookup(s);
+        if (code == Dictionary.NONE) return false;
+        for (int c : codes) if (c == code) return true;
+        return false;
+    }
+
+    @Override
+    public Iterator<String> iterator() {
+        return new Iterator<>() {
+            private int i;
+
+            @Override
+            public boolean hasNext() { return i < codes.length; }
+
+            @Override
+            public String next() {
+                if (i >= codes.length) throw new NoSuchElementException();
+                return Dictionary.TAGS.value(codes[i++]);
+            }
+        };
+    }
+
+    @Override
+    public int size() { return codes.length; }
+}
@@ -0,0 +1,195 @@
+package ch.tbz.beatlog.persistence;
+
+import ch.tbz.beatlog.domain.ListeningSession;
+import ch.tbz.beatlog.domain.Song;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Kompaktes Binärformat für die Basisdateien.
+ *
+ * <pre>
+ * Header:  int MAGIC | short VERSION | byte KIND | int count
+ * Record:  int length | length Bytes Nutzdaten
+ * String:  int byteLength (-1 = null) | UTF-8
+ * </pre>
+ *
+ * Zeitstempel stehen als Epoch-Sekunden + Nanos in der Datei (kein Instant.parse).
+ * Gelesen wird gestreamt, Datensatz für Datensatz in einen wiederverwendeten Puffer;
+ * dank Längenpräfix kann ein Datensatz übersprungen werden, ohne ihn zu dekodieren.
+ */
+class BinaryStorageFormat implements StorageFormat {
+
+    private static final int MAGIC = 0x424C4F47; // "BLOG"
+    private static final short VERSION = 1;
+    private static final byte KIND_SONGS = 1;
+    private static final byte KIND_SESSIONS = 2;
+    private static final int COUNT_OFFSET = 4 + 2 + 1;
+
+    private interface RecordWriter<T> {
+        void write(DataOutputStream out, T item) throws IOException;
+    }
+
+    private interface RecordReader<T> {
+        T read(ByteBuffer record);
+    }
+
+    @Override
+    public void readSongs(Path file, Consumer<Song> sink) throws IOException {
+        read(file, KIND_SONGS, BinaryStorageFormat::readSong, sink);
+    }
+
+    @Override
+    public void writeSongs(Path file, Iterable<Song> songs) throws IOException {
+        write(file, KIND_SONGS, songs, BinaryStorageFormat::writeSong);
+    }
+
+    @Override
+    public void readSessions(Path file, Consumer<ListeningSession> sink) throws IOException {
+        read(file, KIND_SESSIONS, BinaryStorageFormat::readSession, sink);
+    }
+
+    @Override
+    public void writeSessions(Path file, Iterable<ListeningSession> sessions) throws IOException {
+        write(file, KIND_SESSIONS, sessions, BinaryStorageFormat::writeSession);
+    }
+
+    @Override
+    public String fileExtension() { return ".bin"; }
+
+    // Gestreamt über einen wiederverwendeten Heap-Puffer statt memory-mapped: ein Mapping bliebe
+    // bis zur GC bestehen und blockiert unter Windows das spätere Ersetzen der Datei
+    private static <T> void read(Path file, byte kind, RecordReader<T> reader, Consumer<T> sink) throws IOException {
+        if (Files.size(file) == 0) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC) throw new IOException("Keine BeatLog-Binärdatei: " + file);
+            short version = in.readShort();
+            if (version != VERSION) throw new IOException("Nicht unterstützte Dateiversion " + version + ": " + file);
+            if (in.readByte() != kind) throw new IOException("Falscher Dateityp: " + file);
+            int count = in.readInt();
+            byte[] bytes = new byte[256];
+            for (int i = 0; i < count; i++) {
+                int length = in.readInt();
+                if (length < 0) throw new IOException("Beschädigte Binärdatei " + file + ": negative Länge");
+                if (length > bytes.length) bytes = new byte[Math.max(length, bytes.length * 2)];
+                in.readFully(bytes, 0, length);
+                sink.accept(reader.read(ByteBuffer.wrap(bytes, 0, length)));
+            }
+        } catch (EOFException e) {
+            throw new IOException("Beschädigte Binärdatei " + file + ": Datei endet vorzeitig", e);
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException e) {
+            throw new IOException("Beschädigte Binärdatei " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    // Schreibt erst in eine temporäre Datei und ersetzt dann atomar
+    private static <T> void write(Path file, byte kind, Iterable<T> items, RecordWriter<T> writer) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        int count = 0;
+        ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+        DataOutputStream recordOut = new DataOutputStream(record);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeByte(kind);
+            out.writeInt(0); // Anzahl wird am Schluss nachgetragen
+            for (T item : items) {
+                record.reset();
+                writer.write(recordOut, item);
+                out.writeInt(record.size());
+                record.writeTo(out);
+                count++;
+            }
+        }
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.write(ByteBuffer.allocate(4).putInt(0, count), COUNT_OFFSET);
+        }
+        StorageFormat.replaceDurably(tmp, file);
+    }
+
+    private static void writeSong(DataOutputStream out, Song s) throws IOException {
+        writeString(out, s.getId());
+        writeString(out, s.getTitle());
+        writeString(out, s.getArtist());
+        writeString(out, s.getGenre());
+        out.writeInt(s.getYear());
+        out.writeInt(s.getDurationSec());
+        writeString(out, s.getMood());
+        out.writeInt(s.getRating());
+        Set<String> tags = s.getTags();
+        out.writeInt(tags == null ? -1 : tags.size());
+        if (tags != null) for (String t : tags) writeString(out, t);
+    }
+
+    private static Song readSong(ByteBuffer in) {
+        String id = readString(in);
+        String title = readString(in);
+        String artist = readString(in);
+        String genre = readString(in);
+        int year = in.getInt();
+        int duration = in.getInt();
+        String mood = readString(in);
+        int rating = in.getInt();
+        int tagCount = in.getInt();
+        Set<String> tags = null;
+        if (tagCount >= 0) {
+            tags = new LinkedHashSet<>();
+            for (int i = 0; i < tagCount; i++) tags.add(readString(in));
+        }
+        return new Song(id, title, artist, genre, year, duration, mood, rating, tags);
+    }
+
+    private static void writeSession(DataOutputStream out, ListeningSession s) throws IOException {
+        writeString(out, s.getId());
+        writeString(out, s.getSongId());
+        Instant ts = s.getTimestamp();
+        out.writeBoolean(ts != null);
+        if (ts != null) {
+            out.writeLong(ts.getEpochSecond());
+            out.writeInt(ts.getNano());
+        }
+        writeString(out, s.getMood());
+        writeString(out, s.getNote());
+        out.writeBoolean(s.getRatingOverride() != null);
+        if (s.getRatingOverride() != null) out.writeInt(s.getRatingOverride());
+    }
+
+    private static ListeningSession readSession(ByteBuffer in) {
+        String id = readString(in);
+        String songId = readString(in);
+        Instant ts = in.get() != 0 ? Instant.ofEpochSecond(in.getLong(), in.getInt()) : null;
+        String mood = readString(in);
+        String note = readString(in);
+        Integer rating = in.get() != 0 ? in.getInt() : null;
+        return new ListeningSession(id, songId, ts, mood, note, rating);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,250 @@
+package ch.tbz.beatlog.persistence;
+
+import ch.tbz.beatlog.domain.DataSnapshot;
+import ch.tbz.beatlog.domain.ListeningSession;
+import ch.tbz.beatlog.domain.Song;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Handgeschriebene Streaming-Adapter statt Reflection. Feldnamen und das Weglassen von
+ * null-Werten entsprechen dem bisherigen reflektiven Format, alte Dateien bleiben lesbar.
+ * Zeitstempel werden als ISO-String oder als Epoch-Millis geschrieben und beim Lesen in
+ * beiden Formen akzeptiert. Epoch-Millis schneiden Anteile unter einer Millisekunde ab.
+ */
+final class JsonAdapters {
+    private JsonAdapters() {}
+
+    enum TimestampFormat { ISO, EPOCH_MILLIS }
+
+    static final class InstantAdapter extends TypeAdapter<Instant> {
+        private final TimestampFormat format;
+
+        InstantAdapter(TimestampFormat format) {
+            this.format = format;
+        }
+
+        @Override
+        public void write(JsonWriter out, Instant value) throws IOException {
+            if (value == null) out.nullValue();
+            else if (format == TimestampFormat.EPOCH_MILLIS) out.value(value.toEpochMilli());
+            else out.value(value.toString());
+        }
+
+        @Override
+        public Instant read(JsonReader in) throws IOException {
+            return switch (in.peek()) {
+                case NULL -> {
+                    in.nextNull();
+                    yield null;
+                }
+                case NUMBER -> Instant.ofEpochMilli(in.nextLong());
+                default -> Instant.parse(in.nextString());
+            };
+        }
+    }
+
+    static final class SongAdapter extends TypeAdapter<Song> {
+        @Override
+        public void write(JsonWriter out, Song s) throws IOException {
+            if (s == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            name(out, "id", s.getId());
+            name(out, "title", s.getTitle());
+            name(out, "artist", s.getArtist());
+            name(out, "genre", s.getGenre());
+            out.name("year").value(s.getYear());
+            out.name("durationSec").value(s.getDurationSec());
+            name(out, "mood", s.getMood());
+            out.name("rating").value(s.getRating());
+            if (s.getTags() != null) {
+                out.name("tags").beginArray();
+                for (String t : s.getTags()) out.value(t);
+                out.endArray();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public Song read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String id = null, title = null, artist = null, genre = null, mood = null;
+            int year = 0, duration = 0, rating = 0;
+            Set<String> tags = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "id" -> id = in.nextString();
+                    case "title" -> title = in.nextString();
+                    case "artist" -> artist = in.nextString();
+                    case "genre" -> genre = in.nextString();
+                    case "year" -> year = in.nextInt();
+                    case "durationSec" -> duration = in.nextInt();
+                    case "mood" -> mood = in.nextString();
+                    case "rating" -> rating = in.nextInt();
+                    case "tags" -> {
+                        tags = new LinkedHashSet<>();
+                        in.beginArray();
+                        while (in.hasNext()) tags.add(nextStringOrNull(in));
+                        in.endArray();
+                    }
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new Song(id, title, artist, genre, year, duration, mood, rating, tags);
+        }
+    }
+
+    static final class SessionAdapter extends TypeAdapter<ListeningSession> {
+        private final InstantAdapter instants;
+
+        SessionAdapter(InstantAdapter instants) {
+            this.instants = instants;
+        }
+
+        @Override
+        public void write(JsonWriter out, ListeningSession s) throws IOException {
+            if (s == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            name(out, "id", s.getId());
+            name(out, "songId", s.getSongId());
+            if (s.getTimestamp() != null) {
+                out.name("timestamp");
+                instants.write(out, s.getTimestamp());
+            }
+            name(out, "mood", s.getMood());
+            name(out, "note", s.getNote());
+            if (s.getRatingOverride() != null) out.name("ratingOverride").value(s.getRatingOverride());
+            out.endObject();
+        }
+
+        @Override
+        public ListeningSession read(JsonReader in) throws IOException {
+            if (in.peek() == JsonToken.NULL) {
+                in.nextNull();
+                return null;
+            }
+            String id = null, songId = null, mood = null, note = null;
+            Instant timestamp = null;
+            Integer rating = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                String name = in.nextName();
+                if (in.peek() == JsonToken.NULL) {
+                    in.nextNull();
+                    continue;
+                }
+                switch (name) {
+                    case "id" -> id = in.nextString();
+                    case "songId" -> songId = in.nextString();
+                    case "timestamp" -> timestamp = instants.read(in);
+                    case "mood" -> mood = in.nextString();
+                    case "note" -> note = in.nextString();
+                    case "ratingOverride" -> rating = in.nextInt();
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return new ListeningSession(id, songId, timestamp, mood, note, rating);
+        }
+    }
+
+    static final class SnapshotAdapter extends TypeAdapter<DataSnapshot> {
+        private final SongAdapter songs;
+        private final SessionAdapter sessions;
+
+        SnapshotAdapter(SongAdapter songs, SessionAdapter sessions) {
+            this.songs = songs;
+            this.sessions = sessions;
+        }
+
+        @Override
+        public void write(JsonWriter out, DataSnapshot snap) throws IOException {
+            if (snap == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("songs");
+            writeList(out, snap.getSongs(), songs);
+            out.name("sessions");
+            writeList(out, snap.getSessions(), sessions);
+            out.endObject();
+        }
+
+        @Override
+        public DataSnapshot read(JsonReader in) throws IOException {
+            if (in.peek() != JsonToken.BEGIN_OBJECT) throw new JsonParseException("Snapshot erwartet ein Objekt.");
+            DataSnapshot snap = new DataSnapshot();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "songs" -> readList(in, songs, snap.getSongs());
+                    case "sessions" -> readList(in, sessions, snap.getSessions());
+                    default -> in.skipValue();
+                }
+            }
+            in.endObject();
+            return snap;
+        }
+    }
+
+    static <T> void writeList(JsonWriter out, Iterable<T> items, TypeAdapter<T> adapter) throws IOException {
+        if (items == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginArray();
+        for (T item : items) adapter.write(out, item);
+        out.endArray();
+    }
+
+    static <T> void readList(JsonReader in, TypeAdapter<T> adapter, List<T> sink) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return;
+        }
+        in.beginArray();
+        while (in.hasNext()) {
+            T item = adapter.read(in);
+            if (item != null) sink.add(item);
+        }
+        in.endArray();
+    }
+
+    private static void name(JsonWriter out, String name, String value) throws IOException {
+        if (value != null) out.name(name).value(value);
+    }
+
+    private static String nextStringOrNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        return in.nextString();
+    }
+}
@@ -1,156 +1,514 @@
 package ch.tbz.beatlog.persistence;
 
+import ch.tbz.beatlog.common.MergeResult;
+import ch.tbz.beatlog.common.Page;
+import ch.tbz.beatlog.common.SortOrder;
 import ch.tbz.beatlog.domain.Song;
 import ch.tbz.beatlog.domain.ListeningSession;
 import ch.tbz.beatlog.domain.DataSnapshot;
-import com.google.gson.*;
-import com.google.gson.reflect.TypeToken;
+import ch.tbz.beatlog.domain.SongStats;
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
 
 import java.io.IOException;
-import java.io.Reader;
-import java.io.Writer;
-import java.lang.reflect.Type;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
 
 public class JsonRepository implements Repository {
 
-    private final Gson gson;
+    private final JsonStorageFormat json;
+    private final StorageFormat storage;
     private final Path dataDir;
     private final Path songsFile;
     private final Path sessionsFile;
+    private final Path journalFile;
+    private final SessionJournal journal;
+    private final int compactThreshold;
+    private final Gson lineGson;
+    private final ScheduledExecutorService flusher;
+    private final int flushBatchSize;
+    private final Thread shutdownHook;
+    private final Object flushLock = new Object();
+    private final AtomicInteger pendingSongWrites = new AtomicInteger();
 
-    private final Map<String, Song> songs = new LinkedHashMap<>();
-    private final List<ListeningSession> sessions = new ArrayList<>();
-    private boolean loaded = false;
+    // Schreiber serialisieren über den Write-Lock. Leser arbeiten auf unveränderlichen Sichten
+    // (songsView, sessions.view()); songs erlaubt Lookups ganz ohne Lock.
+    private final StampedLock lock = new StampedLock();
+    private final Map<String, Song> songs = new ConcurrentHashMap<>();
+    private final SongIndex songIndex = new SongIndex();
+    // Wird nach dem Laden einmal durch den fertig aufgebauten Speicher ersetzt
+    private volatile SessionStore sessions = new SessionStore();
+    // Unveränderliche Sicht auf die Songs, wird nach einer Änderung beim nächsten Lesen neu aufgebaut
+    private volatile List<Song> songsView;
+
+    // Songs und Sessions werden unabhängig geladen; wer nur Songs braucht, wartet nicht auf Sessions
+    private final Object songLoadLock = new Object();
+    private final Object sessionLoadLock = new Object();
+    private volatile boolean songsLoaded = false;
+    private volatile boolean sessionsLoaded = false;
+    private final ExecutorService loader;
+
+    // Ersetzen und Zusammenführen nicht gleichzeitig, sonst passen die Zeilennummern eines MergePlan nicht mehr
+    private final Object importLock = new Object();
 
     public JsonRepository(Properties config) {
+        this.json = JsonStorageFormat.fromConfig(config);
+        this.lineGson = JsonStorageFormat.newGsonBuilder(JsonStorageFormat.timestampFormat(config)).create();
+        // Basisdateien als JSON (Standard) oder im kompakten Binärformat; Export/Import bleibt JSON
+        String format = config.getProperty("storage.format", "json");
+        this.storage = switch (format.toLowerCase(Locale.ROOT)) {
+            case "json" -> json;
+            case "binary" -> new BinaryStorageFormat();
+            default -> throw new IllegalArgumentException("Unbekanntes storage.format: " + format);
+        };
+
         String dir = Objects.requireNonNullElse(config.getProperty("data.dir"), "data");
-        String songsName = Objects.requireNonNullElse(config.getProperty("songs.file"), "songs.json");
-        String sessionsName = Objects.requireNonNullElse(config.getProperty("sessions.file"), "sessions.json");
+        String songsName = Objects.requireNonNullElse(config.getProperty("songs.file"), "songs" + storage.fileExtension());
+        String sessionsName = Objects.requireNonNullElse(config.getProperty("sessions.file"), "sessions" + storage.fileExtension());
 
         this.dataDir = Path.of(dir);
         this.songsFile = dataDir.resolve(songsName);
         this.sessionsFile = dataDir.resolve(sessionsName);
 
-        this.gson = new GsonBuilder()
-                .setPrettyPrinting()
-                .registerTypeAdapter(Instant.class, (JsonSerializer<Instant>) (src, t, ctx) ->
-                        new JsonPrimitive(src.toString()))
-                .registerTypeAdapter(Instant.class, (JsonDeserializer<Instant>) (json, t, ctx) ->
-                        Instant.parse(json.getAsString()))
-                .create();
+        String journalName = Objects.requireNonNullElse(config.getProperty("sessions.journal"), "sessions.journal.jsonl");
+        boolean fsync = "always".equalsIgnoreCase(config.getProperty("journal.fsync", "never"));
+        this.journalFile = dataDir.resolve(journalName);
+        this.journal = new SessionJournal(journalFile, fsync);
+        this.compactThreshold = Integer.parseInt(config.getProperty("journal.compact.threshold", "1000"));
+
+        // Write-behind: Song-Änderungen werden gesammelt und periodisch in einem Schreibvorgang persistiert
+        if (Boolean.parseBoolean(config.getProperty("songs.writeBehind", "false"))) {
+            long intervalMs = Long.parseLong(config.getProperty("songs.flush.intervalMs", "1000"));
+            this.flushBatchSize = Integer.parseInt(config.getProperty("songs.flush.batchSize", "100"));
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "beatlog-flusher");
+                t.setDaemon(true);
+                return t;
+            });
+            flusher.scheduleWithFixedDelay(this::backgroundFlush, intervalMs, intervalMs, TimeUnit.MILLISECONDS);
+            this.shutdownHook = new Thread(this::flush, "beatlog-shutdown-flush");
+            Runtime.getRuntime().addShutdownHook(shutdownHook);
+        } else {
+            this.flushBatchSize = 1;
+            this.flusher = null;
+            this.shutdownHook = null;
+        }
+
+        // Warm-up: beide Dateien sofort parallel im Hintergrund laden statt beim ersten Zugriff
+        if (Boolean.parseBoolean(config.getProperty("load.eager", "false"))) {
+            this.loader = Executors.newFixedThreadPool(2, r -> {
+                Thread t = new Thread(r, "beatlog-loader");
+                t.setDaemon(true);
+                return t;
+            });
+            loader.execute(() -> warmUp(this::ensureSongsLoaded));
+            loader.execute(() -> warmUp(this::ensureSessionsLoaded));
+            loader.shutdown();
+        } else {
+            this.loader = null;
+        }
     }
 
-    private void ensureLoaded() {
-        if (loaded) return;
+    // Fehler beim Vorladen nur melden; der erste echte Zugriff lädt erneut und bekommt die Exception
+    private static void warmUp(Runnable load) {
         try {
-            if (!Files.exists(dataDir)) Files.createDirectories(dataDir);
+            load.run();
+        } catch (RuntimeException e) {
+            System.err.println("Vorladen fehlgeschlagen: " + e.getMessage());
+        }
+    }
 
-            // Songs laden
-            if (Files.exists(songsFile)) {
-                try (Reader r = Files.newBufferedReader(songsFile)) {
-                    Type listType = new TypeToken<List<Song>>() {}.getType();
-                    List<Song> list = gson.fromJson(r, listType);
-                    if (list != null) for (Song s : list) songs.put(s.getId(), s);
-                }
-            }
+    private void ensureLoaded() {
+        ensureSongsLoaded();
+        ensureSessionsLoaded();
+    }
+
+    // Läuft das Vorladen noch, blockiert der Aufrufer am Monitor, bis es fertig ist
+    private void ensureSongsLoaded() {
+        if (songsLoaded) return;
+        synchronized (songLoadLock) {
+            if (!songsLoaded) loadSongs();
+        }
+    }
 
-            // Sessions laden
+    private void ensureSessionsLoaded() {
+        if (sessionsLoaded) return;
+        synchronized (sessionLoadLock) {
+            if (!sessionsLoaded) loadSessions();
+        }
+    }
+
+    // Datei ohne Lock lesen, danach unter dem Write-Lock übernehmen
+    private void loadSongs() {
+        List<Song> loaded = new ArrayList<>();
+        try {
+            createDataDir();
+            if (Files.exists(songsFile)) storage.readSongs(songsFile, loaded::add);
+        } catch (IOException e) {
+            throw new RuntimeException("Fehler beim Laden: " + e.getMessage(), e);
+        }
+        long stamp = lock.writeLock();
+        try {
+            for (Song s : loaded) putSong(s);
+            songsLoaded = true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Baut einen eigenen SessionStore ohne Lock auf und tauscht ihn unter dem Write-Lock ein
+    private void loadSessions() {
+        SessionStore store = new SessionStore();
+        boolean torn = false;
+        try {
+            createDataDir();
             if (Files.exists(sessionsFile)) {
-                try (Reader r = Files.newBufferedReader(sessionsFile)) {
-                    Type listType = new TypeToken<List<ListeningSession>>() {}.getType();
-                    List<ListeningSession> list = gson.fromJson(r, listType);
-                    if (list != null) sessions.addAll(list);
-                }
+                storage.readSessions(sessionsFile, store::appendUnordered);
+                store.rebuildTimeOrder();
             }
 
-            loaded = true;
+            // Journal abspielen; Sessions, die schon kompaktiert wurden, nicht doppelt übernehmen
+            if (Files.exists(journalFile) && Files.size(journalFile) > 0) {
+                Set<String> seen = new HashSet<>();
+                for (ListeningSession s : store.view()) seen.add(s.getId());
+                torn = journal.replay(line -> {
+                    ListeningSession s = lineGson.fromJson(line, ListeningSession.class);
+                    if (s.getId() == null || seen.add(s.getId())) store.appendUnordered(s);
+                });
+                store.rebuildTimeOrder();
+            }
         } catch (IOException e) {
             throw new RuntimeException("Fehler beim Laden: " + e.getMessage(), e);
         }
+        long stamp = lock.writeLock();
+        try {
+            sessions = store;
+            sessionsLoaded = true;
+            if (torn || journal.size() >= compactThreshold) compactSessions();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private void createDataDir() throws IOException {
+        if (!Files.exists(dataDir)) Files.createDirectories(dataDir);
     }
 
+    // Aufrufer hält flushLock, aber nicht den StampedLock
     private void persistSongs() {
-        try (Writer w = Files.newBufferedWriter(songsFile)) {
-            gson.toJson(new ArrayList<>(songs.values()), w);
+        List<Song> copy;
+        long stamp = lock.readLock();
+        try {
+            copy = songIndex.songs();
+            pendingSongWrites.set(0);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        try {
+            storage.writeSongs(songsFile, copy);
         } catch (IOException e) {
             throw new RuntimeException("Konnte Songs nicht speichern: " + e.getMessage(), e);
         }
     }
 
+    // Aufrufer hält den Write-Lock
     private void persistSessions() {
-        try (Writer w = Files.newBufferedWriter(sessionsFile)) {
-            gson.toJson(sessions, w);
+        try {
+            storage.writeSessions(sessionsFile, sessions.view());
         } catch (IOException e) {
             throw new RuntimeException("Konnte Sessions nicht speichern: " + e.getMessage(), e);
         }
     }
 
+    private void songsChanged() {
+        songsChanged(1);
+    }
+
+    private void songsChanged(int count) {
+        boolean flushNow = pendingSongWrites.addAndGet(count) >= flushBatchSize;
+        if (flusher == null) {
+            flushSongs();
+        } else if (flushNow) {
+            flusher.execute(this::backgroundFlush);
+        }
+    }
+
+    private void flushSongs() {
+        synchronized (flushLock) {
+            if (pendingSongWrites.get() == 0) return;
+            persistSongs();
+        }
+    }
+
+    private void backgroundFlush() {
+        try {
+            flushSongs();
+        } catch (RuntimeException e) {
+            // bleibt dirty, nächster Durchlauf oder flush() versucht es erneut
+            pendingSongWrites.updateAndGet(n -> Math.max(n, 1));
+            System.err.println("Hintergrund-Speicherung fehlgeschlagen: " + e.getMessage());
+        }
+    }
+
+    // Aufrufer hält den Write-Lock
+    private void putSong(Song song) {
+        // ConcurrentHashMap kennt keine null-Schlüssel
+        if (song.getId() == null) throw new IllegalArgumentException("Song ohne ID kann nicht gespeichert werden.");
+        song.intern();
+        songs.put(song.getId(), song);
+        songIndex.put(song);
+        songsView = null;
+    }
+
+    private List<Song> songsView() {
+        List<Song> view = songsView;
+        if (view != null) return view;
+        long stamp = lock.readLock();
+        try {
+            view = songsView;
+            if (view == null) {
+                view = Collections.unmodifiableList(songIndex.songs());
+                songsView = view;
+            }
+            return view;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
     @Override
     public void saveSong(Song song) {
-        ensureLoaded();
-        songs.put(song.getId(), song);
-        persistSongs();
+        ensureSongsLoaded();
+        long stamp = lock.writeLock();
+        try {
+            putSong(song);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        songsChanged();
+    }
+
+    @Override
+    public void saveSongs(Collection<Song> batch) {
+        ensureSongsLoaded();
+        long stamp = lock.writeLock();
+        try {
+            for (Song s : batch) putSong(s);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        songsChanged(batch.size());
     }
 
     @Override
     public Optional<Song> findSongById(String id) {
-        ensureLoaded();
+        if (id == null) return Optional.empty();
+        ensureSongsLoaded();
         return Optional.ofNullable(songs.get(id));
     }
 
+    @Override
+    public Map<String, Song> findSongsByIds(Collection<String> ids) {
+        ensureSongsLoaded();
+        Map<String, Song> found = new HashMap<>();
+        for (String id : ids) {
+            if (id == null || found.containsKey(id)) continue;
+            Song s = songs.get(id);
+            if (s != null) found.put(id, s);
+        }
+        return found;
+    }
+
     @Override
     public List<Song> loadAllSongs() {
-        ensureLoaded();
-        return new ArrayList<>(songs.values());
+        ensureSongsLoaded();
+        return songsView();
+    }
+
+    @Override
+    public List<Song> filterSongs(String mood, Integer minRating, String tag) {
+        ensureSongsLoaded();
+        // Posting-Maps sind HashMaps, deshalb hier pessimistisch lesen
+        long stamp = lock.readLock();
+        try {
+            return songIndex.filter(mood, minRating, tag);
+        } finally {
+            lock.unlockRead(stamp);
+        }
     }
 
     @Override
     public void deleteSong(String id) {
-        ensureLoaded();
-        songs.remove(id);
-        persistSongs();
+        if (id == null) return;
+        ensureSongsLoaded();
+        long stamp = lock.writeLock();
+        try {
+            songs.remove(id);
+            songIndex.remove(id);
+            songsView = null;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        songsChanged();
     }
 
     @Override
     public void saveSession(ListeningSession session) {
-        ensureLoaded();
-        sessions.add(session);
+        ensureSessionsLoaded();
+        long stamp = lock.writeLock();
+        try {
+            journal.append(lineGson.toJson(session));
+            sessions.add(session);
+            if (journal.size() >= compactThreshold) compactSessions();
+        } catch (IOException e) {
+            throw new RuntimeException("Konnte Session nicht speichern: " + e.getMessage(), e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void saveSessions(Collection<ListeningSession> batch) {
+        ensureSessionsLoaded();
+        long stamp = lock.writeLock();
+        try {
+            if (journal.size() + batch.size() >= compactThreshold) {
+                // Grosser Batch: direkt in die Basisdatei, ein einziger Schreibvorgang
+                sessions.addAll(batch);
+                compactSessions();
+            } else {
+                List<String> lines = new ArrayList<>(batch.size());
+                for (ListeningSession s : batch) lines.add(lineGson.toJson(s));
+                journal.appendAll(lines);
+                sessions.addAll(batch);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Konnte Sessions nicht speichern: " + e.getMessage(), e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Aufrufer hält den Write-Lock
+    private void compactSessions() {
+        // Basisdatei liegt danach vollständig auf der Platte; erst dann das Journal leeren
         persistSessions();
+        try {
+            journal.reset();
+        } catch (IOException e) {
+            throw new RuntimeException("Konnte Journal nicht kompaktieren: " + e.getMessage(), e);
+        }
     }
 
     @Override
     public List<ListeningSession> loadAllSessions() {
-        ensureLoaded();
-        return new ArrayList<>(sessions);
+        ensureSessionsLoaded();
+        return sessions.view();
+    }
+
+    @Override
+    public Page<Song> pageSongs(int offset, int limit) {
+        ensureSongsLoaded();
+        return Page.of(songsView(), offset, limit, SortOrder.ASCENDING);
+    }
+
+    @Override
+    public Page<ListeningSession> pageSessions(int offset, int limit, SortOrder order) {
+        ensureSessionsLoaded();
+        return Page.of(sessions.byTimeView(), offset, limit, order);
+    }
+
+    @Override
+    public List<ListeningSession> findSessionsBetween(Instant from, Instant to) {
+        ensureSessionsLoaded();
+        return sessions.between(from, to);
+    }
+
+    @Override
+    public List<ListeningSession> findLatestSessions(int n) {
+        ensureSessionsLoaded();
+        return Page.of(sessions.byTimeView(), 0, n, SortOrder.DESCENDING).getItems();
+    }
+
+    @Override
+    public List<ListeningSession> findSessionsBySong(String songId) {
+        ensureSessionsLoaded();
+        long stamp = lock.readLock();
+        try {
+            return sessions.sessionsOf(songId);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public SongStats findSongStats(String songId) {
+        ensureSessionsLoaded();
+        long stamp = lock.readLock();
+        try {
+            return sessions.stats(songId);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Map<String, SongStats> findSongStatsByIds(Collection<String> songIds) {
+        ensureSessionsLoaded();
+        Map<String, SongStats> out = new HashMap<>();
+        long stamp = lock.readLock();
+        try {
+            for (String id : songIds) out.put(id, sessions.stats(id));
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return out;
     }
 
     @Override
     public DataSnapshot getSnapshot() {
         ensureLoaded();
-        return new DataSnapshot(new ArrayList<>(songs.values()), new ArrayList<>(sessions));
+        return new DataSnapshot(songsView(), sessions.view());
     }
 
     @Override
     public void replaceAll(DataSnapshot snapshot) {
-        ensureLoaded();
-        songs.clear();
-        sessions.clear();
+        synchronized (importLock) {
+            replaceAllLocked(snapshot);
+        }
+    }
 
-        if (snapshot.getSongs() != null) {
-            for (Song s : snapshot.getSongs()) {
-                songs.put(s.getId(), s);
+    private void replaceAllLocked(DataSnapshot snapshot) {
+        ensureLoaded();
+        long stamp = lock.writeLock();
+        try {
+            songs.clear();
+            songIndex.clear();
+            songsView = null;
+            if (snapshot.getSongs() != null) {
+                for (Song s : snapshot.getSongs()) {
+                    putSong(s);
+                }
             }
+            sessions.clear();
+            if (snapshot.getSessions() != null) {
+                sessions.addAll(snapshot.getSessions());
+            }
+            compactSessions();
+            pendingSongWrites.incrementAndGet();
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        if (snapshot.getSessions() != null) {
-            sessions.addAll(snapshot.getSessions());
-        }
-
-        persistSongs();
-        persistSessions();
+        flushSongs();
     }
 
     @Override
@@ -162,9 +520,7 @@ public class JsonRepository implements Repository {
             if (target.getParent() != null && !Files.exists(target.getParent())) {
                 Files.createDirectories(target.getParent());
             }
-            try (Writer w = Files.newBufferedWriter(target)) {
-                gson.toJson(snap, w);
-            }
+            json.writeSnapshot(target, snap);
         } catch (IOException e) {
             throw new RuntimeException("Export fehlgeschlagen: " + e.getMessage(), e);
         }
@@ -174,12 +530,120 @@ public class JsonRepository implements Repository {
     public void importAll(String filePath) {
         Path src = Path.of(filePath);
         if (!Files.exists(src)) throw new RuntimeException("Import-Datei nicht gefunden: " + filePath);
-        try (Reader r = Files.newBufferedReader(src)) {
-            DataSnapshot snap = gson.fromJson(r, DataSnapshot.class);
-            if (snap == null) throw new RuntimeException("Import-Datei leer oder ungültig.");
-            replaceAll(snap);
-        } catch (IOException e) {
+        DataSnapshot snap;
+        try {
+            snap = json.readSnapshot(src);
+        } catch (IOException | JsonParseException | IllegalStateException e) {
             throw new RuntimeException("Import fehlgeschlagen: " + e.getMessage(), e);
         }
+        replaceAll(snap);
+    }
+
+    @Override
+    public MergeResult mergeAll(String filePath) {
+        Path src = Path.of(filePath);
+        if (!Files.exists(src)) throw new RuntimeException("Import-Datei nicht gefunden: " + filePath);
+        synchronized (importLock) {
+            MergePlan plan = newMergePlan();
+            try {
+                json.readSnapshot(src, plan::song, plan::session);
+            } catch (IOException | JsonParseException | IllegalStateException e) {
+                throw new RuntimeException("Import fehlgeschlagen: " + e.getMessage(), e);
+            }
+            plan.finish();
+            applyMerge(plan);
+            return plan.result();
+        }
+    }
+
+    // Plan gegen den aktuellen Bestand; Aufrufer serialisiert Importe (importLock bzw. ShardedRepository)
+    MergePlan newMergePlan() {
+        ensureLoaded();
+        return new MergePlan(songs::get, songsView(), sessions.view());
+    }
+
+    void applyMerge(MergePlan plan) {
+        if (plan.hasSongChanges()) {
+            long stamp = lock.writeLock();
+            try {
+                for (String id : plan.songDeletes) {
+                    songs.remove(id);
+                    songIndex.remove(id);
+                }
+                for (Song s : plan.songUpserts) putSong(s);
+                songsView = null;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+            songsChanged(plan.songUpserts.size() + plan.songDeletes.size());
+        }
+
+        if (plan.sessionsInsertOnly()) {
+            if (!plan.sessionUpserts.isEmpty()) saveSessions(plan.sessionUpserts);
+            return;
+        }
+        // Geänderte oder gelöschte Sessions: Speicher ohne diese Zeilen neu aufbauen und kompaktieren
+        long stamp = lock.writeLock();
+        try {
+            List<ListeningSession> current = sessions.view();
+            SessionStore store = new SessionStore();
+            for (int row = 0; row < current.size(); row++) {
+                if (!plan.droppedRows.get(row)) store.appendUnordered(current.get(row));
+            }
+            for (ListeningSession s : plan.sessionUpserts) store.appendUnordered(s);
+            store.rebuildTimeOrder();
+            sessions = store;
+            compactSessions();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (!songsLoaded && !sessionsLoaded) return;
+        flushSongs();
+        long stamp = lock.readLock();
+        try {
+            journal.force();
+        } catch (IOException e) {
+            throw new RuntimeException("Konnte Journal nicht speichern: " + e.getMessage(), e);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public void close() {
+        // ein laufendes Vorladen erst abschliessen lassen, es greift noch aufs Journal zu
+        if (loader != null) {
+            try {
+                loader.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (flusher != null) {
+            flusher.shutdown();
+            try {
+                flusher.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException ignored) {
+                // JVM fährt bereits herunter, Hook läuft ohnehin
+            }
+        }
+        flush();
+        long stamp = lock.writeLock();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            throw new RuntimeException("Konnte Journal nicht schliessen: " + e.getMessage(), e);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
     }
 }
@@ -0,0 +1,140 @@
+package ch.tbz.beatlog.persistence;
+
+import ch.tbz.beatlog.domain.DataSnapshot;
+import ch.tbz.beatlog.domain.ListeningSession;
+import ch.tbz.beatlog.domain.Song;
+import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+class JsonStorageFormat implements StorageFormat {
+
+    private final Gson gson;
+    private final TypeAdapter<Song> songs;
+    private final TypeAdapter<ListeningSession> sessions;
+    private final TypeAdapter<DataSnapshot> snapshots;
+
+    JsonStorageFormat(Gson gson) {
+        this.gson = gson;
+        this.songs = gson.getAdapter(Song.class);
+        this.sessions = gson.getAdapter(ListeningSession.class);
+        this.snapshots = gson.getAdapter(DataSnapshot.class);
+    }
+
+    // JSON eingerückt (Standard) oder kompakt; Zeitstempel als ISO-String (Standard) oder Epoch-Millis
+    static JsonStorageFormat fromConfig(Properties config) {
+        GsonBuilder builder = newGsonBuilder(timestampFormat(config));
+        if (Boolean.parseBoolean(config.getProperty("json.pretty", "true"))) builder.setPrettyPrinting();
+        return new JsonStorageFormat(builder.create());
+    }
+
+    static JsonAdapters.TimestampFormat timestampFormat(Properties config) {
+        String timestamps = config.getProperty("json.timestamps", "iso");
+        return switch (timestamps.toLowerCase(Locale.ROOT)) {
+            case "iso" -> JsonAdapters.TimestampFormat.ISO;
+            case "millis" -> JsonAdapters.TimestampFormat.EPOCH_MILLIS;
+            default -> throw new IllegalArgumentException("Unbekanntes json.timestamps: " + timestamps);
+        };
+    }
+
+    static GsonBuilder newGsonBuilder(JsonAdapters.TimestampFormat timestamps) {
+        JsonAdapters.InstantAdapter instants = new JsonAdapters.InstantAdapter(timestamps);
+        JsonAdapters.SongAdapter songs = new JsonAdapters.SongAdapter();
+        JsonAdapters.SessionAdapter sessions = new JsonAdapters.SessionAdapter(instants);
+        return new GsonBuilder()
+                .registerTypeAdapter(Instant.class, instants)
+                .registerTypeAdapter(Song.class, songs)
+                .registerTypeAdapter(ListeningSession.class, sessions)
+                .registerTypeAdapter(DataSnapshot.class, new JsonAdapters.SnapshotAdapter(songs, sessions));
+    }
+
+    @Override
+    public void readSongs(Path file, Consumer<Song> sink) throws IOException {
+        readArray(file, songs, sink);
+    }
+
+    @Override
+    public void writeSongs(Path file, Iterable<Song> items) throws IOException {
+        writeArray(file, items, songs);
+    }
+
+    @Override
+    public void readSessions(Path file, Consumer<ListeningSession> sink) throws IOException {
+        readArray(file, sessions, sink);
+    }
+
+    @Override
+    public void writeSessions(Path file, Iterable<ListeningSession> items) throws IOException {
+        writeArray(file, items, sessions);
+    }
+
+    @Override
+    public String fileExtension() { return ".json"; }
+
+    void writeSnapshot(Path target, DataSnapshot snap) throws IOException {
+        try (JsonWriter w = gson.newJsonWriter(Files.newBufferedWriter(target))) {
+            snapshots.write(w, snap);
+        }
+    }
+
+    DataSnapshot readSnapshot(Path src) throws IOException {
+        try (JsonReader r = gson.newJsonReader(Files.newBufferedReader(src))) {
+            if (r.peek() != JsonToken.BEGIN_OBJECT) throw new RuntimeException("Import-Datei leer oder ungültig.");
+            return snapshots.read(r);
+        }
+    }
+
+    // Wie readSnapshot, aber Datensatz für Datensatz in die Consumer statt in einen Snapshot
+    void readSnapshot(Path src, Consumer<Song> songSink, Consumer<ListeningSession> sessionSink) throws IOException {
+        try (JsonReader r = gson.newJsonReader(Files.newBufferedReader(src))) {
+            if (r.peek() != JsonToken.BEGIN_OBJECT) throw new RuntimeException("Import-Datei leer oder ungültig.");
+            r.beginObject();
+            while (r.hasNext()) {
+                switch (r.nextName()) {
+                    case "songs" -> readArray(r, songs, songSink);
+                    case "sessions" -> readArray(r, sessions, sessionSink);
+                    default -> r.skipValue();
+                }
+            }
+            r.endObject();
+        }
+    }
+
+    // Datensätze einzeln aus dem Stream lesen, ohne Zwischenliste
+    private <T> void readArray(Path file, TypeAdapter<T> adapter, Consumer<T> sink) throws IOException {
+        try (JsonReader r = gson.newJsonReader(Files.newBufferedReader(file))) {
+            readArray(r, adapter, sink);
+        }
+    }
+
+    private static <T> void readArray(JsonReader r, TypeAdapter<T> adapter, Consumer<T> sink) throws IOException {
+        if (r.peek() == JsonToken.NULL) {
+            r.nextNull();
+            return;
+        }
+        r.beginArray();
+        while (r.hasNext()) {
+            T item = adapter.read(r);
+            if (item != null) sink.accept(item);
+        }
+        r.endArray();
+    }
+
+    // Nie in place: ein Absturz mitten im Schreiben darf die Basisdatei nicht zerstören
+    private <T> void writeArray(Path file, Iterable<T> items, TypeAdapter<T> adapter) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (JsonWriter w = gson.newJsonWriter(Files.newBufferedWriter(tmp))) {
+            JsonAdapters.writeList(w, items, adapter);
+        }
+        StorageFormat.replaceDurably(tmp, file);
+    }
+}
@@ -0,0 +1,187 @@
+package ch.tbz.beatlog.persistence;
+
+import ch.tbz.beatlog.common.MergeResult;
+import ch.tbz.beatlog.domain.ListeningSession;
+import ch.tbz.beatlog.domain.Song;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Vergleicht einen Import Datensatz für Datensatz mit dem Bestand, ohne den Import als
+ * Ganzes im Speicher zu halten. Zuordnung über die ID; ob sich ein Datensatz geändert hat,
+ * entscheidet ein 64-Bit-Inhaltshash. Sessions ohne ID werden über den Hash zugeordnet.
+ *
+ * <p>Bestehende Sessions werden über ihre Zeilennummer in {@code baseSessions} geführt;
+ * geänderte und gelöschte Zeilen landen in {@link #droppedRows}.
+ */
+final class MergePlan {
+
+    private static final long SEED = 0xcbf29ce484222325L;
+    private static final long PRIME = 0x100000001b3L;
+    private static final long NULL_MARK = 0x9e3779b97f4a7c15L;
+
+    private final Function<String, Song> existingSong;
+    private final List<Song> baseSongs;
+    private final int baseSessionCount;
+    private final List<ListeningSession> baseSessions;
+    private final Map<String, Integer> rowById = new HashMap<>();
+    private final Map<Long, ArrayDeque<Integer>> rowsWithoutId = new HashMap<>();
+    private final Set<String> seenSongIds = new HashSet<>();
+    private final BitSet matchedRows = new BitSet();
+
+    final List<Song> songUpserts = new ArrayList<>();
+    final List<String> songDeletes = new ArrayList<>();
+    final List<ListeningSession> sessionUpserts = new ArrayList<>();
+    private final List<ListeningSession> sessionInserts = new ArrayList<>();
+    final BitSet droppedRows = new BitSet();
+
+    private int songsInserted, songsUpdated, songsUnchanged;
+    private int sessionsInserted, sessionsUpdated, sessionsDeleted, sessionsUnchanged;
+    private boolean finished;
+
+    /**
+     * @param existingSong Lookup im aktuellen Bestand
+     * @param baseSongs    unveränderliche Sicht auf die Songs, Grundlage für Löschungen
+     * @param baseSessions unveränderliche Sicht auf die Sessions in Einfügereihenfolge
+     */
+    MergePlan(Function<String, Song> existingSong, List<Song> baseSongs, List<ListeningSession> baseSessions) {
+        this.existingSong = existingSong;
+        this.baseSongs = baseSongs;
+        this.baseSessions = baseSessions;
+        this.baseSessionCount = baseSessions.size();
+        for (int row = 0; row < baseSessionCount; row++) {
+            ListeningSession s = baseSessions.get(row);
+            if (s.getId() == null) {
+                rowsWithoutId.computeIfAbsent(hash(s), k -> new ArrayDeque<>()).add(row);
+            } else {
+                rowById.putIfAbsent(s.getId(), row);
+            }
+        }
+    }
+
+    void song(Song s) {
+        if (s.getId() == null) throw new IllegalStateException("Song ohne ID im Import.");
+        Song current = existingSong.apply(s.getId());
+        boolean first = seenSongIds.add(s.getId());
+        if (current == null) {
+            songsInserted++;
+        } else if (first && hash(current) == hash(s)) {
+            songsUnchanged++;
+            return;
+        } else {
+            songsUpdated++;
+        }
+        songUpserts.add(s);
+    }
+
+    void session(ListeningSession s) {
+        long h = hash(s);
+        if (s.getId() == null) {
+            ArrayDeque<Integer> rows = rowsWithoutId.get(h);
+            Integer row = rows == null ? null : rows.poll();
+            if (row != null) {
+                matchedRows.set(row);
+                sessionsUnchanged++;
+            } else {
+                insertSession(s);
+            }
+            return;
+        }
+        Integer row = rowById.get(s.getId());
+        // doppelte IDs im Import: jedes weitere Vorkommen kommt als neue Session dazu
+        if (row == null || matchedRows.get(row)) {
+            insertSession(s);
+            return;
+        }
+        matchedRows.set(row);
+        if (hash(baseSessions.get(row)) == h) {
+            sessionsUnchanged++;
+        } else {
+            sessionsUpdated++;
+            droppedRows.set(row);
+            sessionUpserts.add(s);
+        }
+    }
+
+    private void insertSession(ListeningSession s) {
+        sessionsInserted++;
+        sessionUpserts.add(s);
+        sessionInserts.add(s);
+    }
+
+    /** Nach dem letzten Datensatz: was im Import fehlt, wird gelöscht. */
+    void finish() {
+        if (finished) return;
+        finished = true;
+        for (Song s : baseSongs) {
+            if (!seenSongIds.contains(s.getId())) songDeletes.add(s.getId());
+        }
+        for (int row = matchedRows.nextClearBit(0); row < baseSessionCount; row = matchedRows.nextClearBit(row + 1)) {
+            droppedRows.set(row);
+            sessionsDeleted++;
+        }
+    }
+
+    boolean hasSongChanges() {
+        return !songUpserts.isEmpty() || !songDeletes.isEmpty();
+    }
+
+    // Nur Einfügungen lassen sich ans Journal anhängen; alles andere baut den Speicher neu auf
+    boolean sessionsInsertOnly() {
+        return droppedRows.isEmpty();
+    }
+
+    MergeResult result() {
+        return new MergeResult(songsInserted, songsUpdated, songDeletes.size(), songsUnchanged,
+                sessionsInserted, sessionsUpdated, sessionsDeleted, sessionsUnchanged, sessionInserts);
+    }
+
+    static long hash(Song s) {
+        long h = SEED;
+        h = mix(h, s.getId());
+        h = mix(h, s.getTitle());
+        h = mix(h, s.getArtist());
+        h = mix(h, s.getGenre());
+        h = mix(h, s.getYear());
+        h = mix(h, s.getDurationSec());
+        h = mix(h, s.getMood());
+        h = mix(h, s.getRating());
+        if (s.getTags() == null) return avalanche(mix(h, NULL_MARK));
+        // Tags sind eine Menge: Reihenfolge darf den Hash nicht ändern
+        long tags = 0;
+        for (String t : s.getTags()) tags += avalanche(mix(SEED, t));
+        return avalanche(mix(h, tags));
+    }
+
+    static long hash(ListeningSession s) {
+        long h = SEED;
+        h = mix(h, s.getId());
+        h = mix(h, s.getSongId());
+        Instant ts = s.getTimestamp();
+        h = ts == null ? mix(h, NULL_MARK) : mix(mix(h, ts.getEpochSecond()), ts.getNano());
+        h = mix(h, s.getMood());
+        h = mix(h, s.getNote());
+        h = s.getRatingOverride() == null ? mix(h, NULL_MARK) : mix(h, s.getRatingOverride());
+        return avalanche(h);
+    }
+
+    private static long mix(long h, String value) {
+        if (value == null) return mix(h, NULL_MARK);
+        h = mix(h, value.length());
+        for (int i = 0; i < value.length(); i++) h = (h ^ value.charAt(i)) * PRIME;
+        return h;
+    }
+
+    private static long mix(long h, long value) {
+        return (h ^ value) * PRIME;
+    }
+
+    private static long avalanche(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+}
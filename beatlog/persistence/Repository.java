@@ -1,24 +1,50 @@
 package ch.tbz.beatlog.persistence;
 
+import ch.tbz.beatlog.common.MergeResult;
+import ch.tbz.beatlog.common.Page;
+import ch.tbz.beatlog.common.SortOrder;
 import ch.tbz.beatlog.domain.Song;
 import ch.tbz.beatlog.domain.ListeningSession;
 import ch.tbz.beatlog.domain.DataSnapshot;
+import ch.tbz.beatlog.domain.SongStats;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
-public interface Repository {
+public interface Repository extends AutoCloseable {
     void saveSong(Song song);
+    void saveSongs(Collection<Song> songs);
     Optional<Song> findSongById(String id);
+    Map<String, Song> findSongsByIds(Collection<String> ids);
     List<Song> loadAllSongs();
+    List<Song> filterSongs(String mood, Integer minRating, String tag);
+    Page<Song> pageSongs(int offset, int limit);
     void deleteSong(String id);
 
     void saveSession(ListeningSession session);
+    void saveSessions(Collection<ListeningSession> sessions);
     List<ListeningSession> loadAllSessions();
+    Page<ListeningSession> pageSessions(int offset, int limit, SortOrder order);
+    // Halboffenes Intervall [from, to), aufsteigend nach Zeit; null = unbegrenzt
+    List<ListeningSession> findSessionsBetween(Instant from, Instant to);
+    // Die neuesten n Sessions, neueste zuerst
+    List<ListeningSession> findLatestSessions(int n);
+    List<ListeningSession> findSessionsBySong(String songId);
+    SongStats findSongStats(String songId);
+    Map<String, SongStats> findSongStatsByIds(Collection<String> songIds);
 
 
     DataSnapshot getSnapshot();
     void replaceAll(DataSnapshot snapshot);
     void exportAll(String filePath); 
     void importAll(String filePath);
+    // Wie importAll, schreibt aber nur neue, geänderte und fehlende Datensätze
+    MergeResult mergeAll(String filePath);
+
+    void flush();
+    @Override
+    void close();
 }
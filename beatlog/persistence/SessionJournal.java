@@ -0,0 +1,107 @@
+package ch.tbz.beatlog.persistence;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Append-only Journal (JSON-Lines): pro Session eine Zeile. Wird beim Start
+ * nach der Basisdatei abgespielt und bei der Kompaktierung geleert.
+ */
+class SessionJournal implements Closeable {
+
+    private final Path file;
+    private final boolean fsync;
+    private FileChannel channel;
+    private int entries;
+
+    SessionJournal(Path file, boolean fsync) {
+        this.file = file;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Spielt alle Zeilen ab. Eine unvollständige letzte Zeile (Absturz mitten im
+     * Schreiben) wird verworfen.
+     *
+     * @return true, wenn ein abgeschnittenes Ende gefunden wurde
+     */
+    boolean replay(Consumer<String> lineConsumer) throws IOException {
+        entries = 0;
+        if (!Files.exists(file)) return false;
+        boolean torn = false;
+        try (BufferedReader r = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = r.readLine();
+            while (line != null) {
+                String next = r.readLine();
+                if (!line.isBlank()) {
+                    try {
+                        lineConsumer.accept(line);
+                        entries++;
+                    } catch (RuntimeException e) {
+                        if (next != null) throw e;
+                        torn = true;
+                    }
+                }
+                line = next;
+            }
+        }
+        return torn;
+    }
+
+    void append(String line) throws IOException {
+        FileChannel ch = channel();
+        ByteBuffer buf = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buf.hasRemaining()) ch.write(buf);
+        if (fsync) ch.force(false);
+        entries++;
+    }
+
+    // Mehrere Zeilen in einem Schreibvorgang (und höchstens einem fsync)
+    void appendAll(List<String> lines) throws IOException {
+        if (lines.isEmpty()) return;
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) sb.append(line).append('\n');
+        FileChannel ch = channel();
+        ByteBuffer buf = ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8));
+        while (buf.hasRemaining()) ch.write(buf);
+        if (fsync) ch.force(false);
+        entries += lines.size();
+    }
+
+    void reset() throws IOException {
+        channel().truncate(0);
+        if (fsync) channel.force(true);
+        entries = 0;
+    }
+
+    void force() throws IOException {
+        if (channel != null) channel.force(false);
+    }
+
+    int size() { return entries; }
+
+    private FileChannel channel() throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        }
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,465 @@
+package ch.tbz.beatlog.persistence;
+
+import ch.tbz.beatlog.common.Ids;
+import ch.tbz.beatlog.domain.ListeningSession;
+import ch.tbz.beatlog.domain.SongStats;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Spaltenorientierter Speicher für Sessions. Statt eines Objekts pro Session gibt es
+ * pro Feld ein primitives Array:
+ * <ul>
+ *   <li>Zeitstempel als Epoch-Millis ({@code long[]}) plus Nanos innerhalb der Milli,</li>
+ *   <li>Song-IDs als Ordinalzahl in ein Wörterbuch ({@code int[]}),</li>
+ *   <li>Session-IDs im UUID-Format als zwei {@code long}, kompakte IDs (siehe
+ *       {@link ch.tbz.beatlog.common.Ids}) als ein {@code long},</li>
+ *   <li>Moods als Byte-Code in ein Wörterbuch,</li>
+ *   <li>Notizen in einer gemeinsamen char-Arena (Offset + Länge),</li>
+ *   <li>Rating-Override als {@code int} mit Sentinel für "keins".</li>
+ * </ul>
+ * Die Sichten ({@link #view()}, {@link #byTimeView()}) erzeugen {@link ListeningSession}
+ * erst beim Zugriff. Belegte Slots werden nie überschrieben und Wachstum kopiert in neue
+ * Arrays, deshalb bleiben veröffentlichte Sichten ohne Lock gültig. Schreiber müssen
+ * extern serialisiert sein.
+ *
+ * <p>Zusätzlich gibt es pro Song-Ordinalzahl einen Rückwärtsindex auf die Zeilen sowie
+ * laufend nachgeführte Kennzahlen (Anzahl, letzte Zeile, letzte Zeile mit Override).
+ * Diese werden in place aktualisiert; Leser brauchen dafür den Read-Lock des Aufrufers.
+ */
+class SessionStore {
+
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private static final int NO_RATING = Integer.MIN_VALUE;
+    private static final int NO_NOTE = -1;
+    private static final byte ID_NULL = 0, ID_UUID = 1, ID_OTHER = 2, ID_COMPACT = 3;
+    private static final int MAX_MOOD_CODES = 255;
+
+    // Momentaufnahme der Array-Referenzen. Wird ersetzt, sobald ein Array wachsen muss;
+    // Arrays, die nicht wachsen, werden von der neuen Momentaufnahme weiterverwendet.
+    private static final class Columns {
+        final long[] millis;
+        final int[] nanos;
+        final byte[] idKind;
+        final long[] idHi;
+        final long[] idLo;
+        final int[] songOrd;
+        final byte[] mood;
+        final int[] noteStart;
+        final int[] noteLength;
+        final int[] rating;
+        final char[] notes;
+        final String[] songIds;
+        final String[] moods;
+        // Seltene Fälle ausserhalb der kompakten Kodierung: Zeile -> Wert
+        final Map<Integer, String> otherIds;
+        final Map<Integer, String> overflowMoods;
+
+        Columns() {
+            this(null, 16, new char[64], new String[16]);
+        }
+
+        Columns(Columns c, int capacity, char[] notes, String[] songIds) {
+            boolean reuse = c != null && capacity == c.millis.length;
+            millis = reuse ? c.millis : c == null ? new long[capacity] : Arrays.copyOf(c.millis, capacity);
+            nanos = reuse ? c.nanos : c == null ? new int[capacity] : Arrays.copyOf(c.nanos, capacity);
+            idKind = reuse ? c.idKind : c == null ? new byte[capacity] : Arrays.copyOf(c.idKind, capacity);
+            idHi = reuse ? c.idHi : c == null ? new long[capacity] : Arrays.copyOf(c.idHi, capacity);
+            idLo = reuse ? c.idLo : c == null ? new long[capacity] : Arrays.copyOf(c.idLo, capacity);
+            songOrd = reuse ? c.songOrd : c == null ? new int[capacity] : Arrays.copyOf(c.songOrd, capacity);
+            mood = reuse ? c.mood : c == null ? new byte[capacity] : Arrays.copyOf(c.mood, capacity);
+            noteStart = reuse ? c.noteStart : c == null ? new int[capacity] : Arrays.copyOf(c.noteStart, capacity);
+            noteLength = reuse ? c.noteLength : c == null ? new int[capacity] : Arrays.copyOf(c.noteLength, capacity);
+            rating = reuse ? c.rating : c == null ? new int[capacity] : Arrays.copyOf(c.rating, capacity);
+            this.notes = notes;
+            this.songIds = songIds;
+            this.moods = c == null ? new String[MAX_MOOD_CODES + 1] : c.moods;
+            this.otherIds = c == null ? new ConcurrentHashMap<>() : c.otherIds;
+            this.overflowMoods = c == null ? new ConcurrentHashMap<>() : c.overflowMoods;
+        }
+    }
+
+    private Columns cols;
+    private int size;
+    private int notesUsed;
+    private final Map<String, Integer> songOrdinals = new HashMap<>();
+    private int songIdCount;
+    private final Map<String, Integer> moodCodes = new HashMap<>();
+    private int moodCount;
+
+    // Zeilennummern aufsteigend nach Zeitstempel (bei Gleichstand nach Einfügereihenfolge)
+    private int[] order;
+
+    // Rückwärtsindex nach Song-Ordinalzahl: Zeilen in Einfügereihenfolge und Kennzahlen
+    private int[][] rowsBySong;
+    private int[] playCount;
+    private int[] lastRow;
+    private int[] lastOverrideRow;
+
+    private volatile View published;
+    private volatile View publishedByTime;
+
+    SessionStore() {
+        clear();
+    }
+
+    void clear() {
+        cols = new Columns();
+        size = 0;
+        notesUsed = 0;
+        songOrdinals.clear();
+        songIdCount = 0;
+        moodCodes.clear();
+        moodCount = 0;
+        order = new int[16];
+        rowsBySong = new int[16][];
+        playCount = new int[16];
+        lastRow = new int[16];
+        lastOverrideRow = new int[16];
+        publish();
+    }
+
+    int size() { return size; }
+
+    List<ListeningSession> view() { return published; }
+
+    List<ListeningSession> byTimeView() { return publishedByTime; }
+
+    /**
+     * Sessions mit {@code from <= Zeitstempel < to} in Zeitreihenfolge, per Binärsuche über
+     * die Zeitordnung. null heisst offen; Sessions ohne Zeitstempel liegen in keinem Bereich.
+     */
+    List<ListeningSession> between(Instant from, Instant to) {
+        View v = publishedByTime;
+        int lo = from == null ? v.lowerBound(NO_TIMESTAMP + 1, 0) : v.lowerBound(from);
+        int hi = to == null ? v.size() : v.lowerBound(to);
+        return v.subList(lo, Math.max(lo, hi));
+    }
+
+    /** Kennzahlen eines Songs; Songs ohne Sessions liefern {@link SongStats#none}. */
+    SongStats stats(String songId) {
+        Integer ord = songOrdinals.get(songId);
+        if (ord == null || playCount[ord] == 0) return SongStats.none(songId);
+        View v = new View(cols, size, null);
+        int last = lastRow[ord];
+        int overrideRow = lastOverrideRow[ord];
+        return new SongStats(songId, playCount[ord], v.timestamp(last),
+                overrideRow < 0 ? null : v.rating(overrideRow));
+    }
+
+    /** Alle Sessions eines Songs in Zeitreihenfolge. */
+    List<ListeningSession> sessionsOf(String songId) {
+        Integer ord = songOrdinals.get(songId);
+        if (ord == null || playCount[ord] == 0) return List.of();
+        int[] rows = Arrays.copyOf(rowsBySong[ord], playCount[ord]);
+        if (!isSorted(rows)) {
+            Integer[] boxed = new Integer[rows.length];
+            for (int i = 0; i < rows.length; i++) boxed[i] = rows[i];
+            Arrays.sort(boxed, this::compareRows);
+            for (int i = 0; i < rows.length; i++) rows[i] = boxed[i];
+        }
+        View v = new View(cols, size, null);
+        List<ListeningSession> out = new ArrayList<>(rows.length);
+        for (int row : rows) out.add(v.get(row));
+        return out;
+    }
+
+    private boolean isSorted(int[] rows) {
+        for (int i = 1; i < rows.length; i++) if (compareRows(rows[i - 1], rows[i]) > 0) return false;
+        return true;
+    }
+
+    /** Hängt an und hält die Zeitordnung aktuell (Anhängen oder Einfügen per Binärsuche). */
+    void add(ListeningSession s) {
+        int row = append(s);
+        if (row == 0 || compareRows(order[row - 1], row) <= 0) {
+            order = ensureCapacity(order, row + 1);
+            order[row] = row;
+        } else {
+            int lo = 0, hi = row;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compareRows(order[mid], row) <= 0) lo = mid + 1;
+                else hi = mid;
+            }
+            // in ein neues Array, damit bestehende Sichten gültig bleiben
+            int[] next = new int[Math.max(order.length, row + 1)];
+            System.arraycopy(order, 0, next, 0, lo);
+            next[lo] = row;
+            System.arraycopy(order, lo, next, lo + 1, row - lo);
+            order = next;
+        }
+        publish();
+    }
+
+    /** Mehrere Sessions; der sortierte Batch wird in einem Durchgang in die Zeitordnung gemischt. */
+    void addAll(Collection<ListeningSession> batch) {
+        if (batch.isEmpty()) return;
+        int before = size;
+        for (ListeningSession s : batch) append(s);
+        int[] newRows = sortedRows(before, size);
+
+        int[] merged = new int[Math.max(order.length, size)];
+        int i = 0, j = 0, k = 0;
+        while (i < before && j < newRows.length) {
+            merged[k++] = compareRows(order[i], newRows[j]) <= 0 ? order[i++] : newRows[j++];
+        }
+        while (i < before) merged[k++] = order[i++];
+        while (j < newRows.length) merged[k++] = newRows[j++];
+        order = merged;
+        publish();
+    }
+
+    /** Nur anhängen, ohne Zeitordnung; nach dem Laden einmal {@link #rebuildTimeOrder()} aufrufen. */
+    void appendUnordered(ListeningSession s) {
+        append(s);
+    }
+
+    void rebuildTimeOrder() {
+        int[] rows = sortedRows(0, size);
+        order = ensureCapacity(rows, 16);
+        publish();
+    }
+
+    // Zeilen from..to-1 nach Zeit sortiert; meist sind sie es schon (chronologisch geloggt)
+    private int[] sortedRows(int from, int to) {
+        int[] rows = new int[to - from];
+        boolean sorted = true;
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = from + i;
+            if (i > 0 && compareRows(rows[i - 1], rows[i]) > 0) sorted = false;
+        }
+        if (!sorted) {
+            Integer[] boxed = new Integer[rows.length];
+            for (int i = 0; i < rows.length; i++) boxed[i] = rows[i];
+            Arrays.sort(boxed, this::compareRows);
+            for (int i = 0; i < rows.length; i++) rows[i] = boxed[i];
+        }
+        return rows;
+    }
+
+    private static int[] ensureCapacity(int[] array, int needed) {
+        return needed <= array.length ? array : Arrays.copyOf(array, Math.max(needed, array.length + (array.length >> 1)));
+    }
+
+    private int compareRows(int a, int b) {
+        int c = Long.compare(cols.millis[a], cols.millis[b]);
+        if (c != 0) return c;
+        c = Integer.compare(cols.nanos[a], cols.nanos[b]);
+        return c != 0 ? c : Integer.compare(a, b);
+    }
+
+    private int append(ListeningSession s) {
+        if (size == cols.millis.length) {
+            cols = new Columns(cols, size + (size >> 1) + 1, cols.notes, cols.songIds);
+        }
+        int row = size;
+        Columns c = cols;
+
+        Instant ts = s.getTimestamp();
+        if (ts == null) {
+            c.millis[row] = NO_TIMESTAMP;
+            c.nanos[row] = 0;
+        } else {
+            c.millis[row] = ts.toEpochMilli();
+            c.nanos[row] = ts.getNano() % 1_000_000;
+        }
+
+        encodeId(c, row, s.getId());
+        c.songOrd[row] = songOrdinal(s.getSongId());
+        c.mood[row] = moodCode(row, s.getMood());
+        storeNote(row, s.getNote());
+        c.rating[row] = s.getRatingOverride() == null ? NO_RATING : s.getRatingOverride();
+
+        size++;
+        indexSongRow(row);
+        return row;
+    }
+
+    private void indexSongRow(int row) {
+        int ord = cols.songOrd[row];
+        if (ord < 0) return;
+        if (ord >= playCount.length) {
+            int capacity = Math.max(ord + 1, playCount.length * 2);
+            rowsBySong = Arrays.copyOf(rowsBySong, capacity);
+            playCount = Arrays.copyOf(playCount, capacity);
+            lastRow = Arrays.copyOf(lastRow, capacity);
+            lastOverrideRow = Arrays.copyOf(lastOverrideRow, capacity);
+        }
+        int n = playCount[ord];
+        if (n == 0) {
+            rowsBySong[ord] = new int[2];
+            lastRow[ord] = -1;
+            lastOverrideRow[ord] = -1;
+        } else if (n == rowsBySong[ord].length) {
+            rowsBySong[ord] = Arrays.copyOf(rowsBySong[ord], n * 2);
+        }
+        rowsBySong[ord][n] = row;
+        playCount[ord] = n + 1;
+        // neue Zeile gewinnt bei gleichem Zeitstempel (wie in der Zeitordnung)
+        if (lastRow[ord] < 0 || compareRows(lastRow[ord], row) < 0) lastRow[ord] = row;
+        if (cols.rating[row] != NO_RATING
+                && (lastOverrideRow[ord] < 0 || compareRows(lastOverrideRow[ord], row) < 0)) {
+            lastOverrideRow[ord] = row;
+        }
+    }
+
+    private void encodeId(Columns c, int row, String id) {
+        if (id == null) {
+            c.idKind[row] = ID_NULL;
+            return;
+        }
+        if (Ids.isCompact(id)) {
+            c.idKind[row] = ID_COMPACT;
+            c.idHi[row] = Ids.decode(id);
+            return;
+        }
+        if (id.length() == 36) {
+            try {
+                UUID uuid = UUID.fromString(id);
+                // nur wenn die Textform exakt wieder herauskommt (z.B. nicht bei Grossbuchstaben)
+                if (uuid.toString().equals(id)) {
+                    c.idKind[row] = ID_UUID;
+                    c.idHi[row] = uuid.getMostSignificantBits();
+                    c.idLo[row] = uuid.getLeastSignificantBits();
+                    return;
+                }
+            } catch (IllegalArgumentException ignored) {
+                // kein UUID, fällt unten durch
+            }
+        }
+        c.idKind[row] = ID_OTHER;
+        c.otherIds.put(row, id);
+    }
+
+    private int songOrdinal(String songId) {
+        if (songId == null) return -1;
+        Integer ord = songOrdinals.get(songId);
+        if (ord != null) return ord;
+        ord = songIdCount;
+        if (ord == cols.songIds.length) {
+            cols = new Columns(cols, cols.millis.length, cols.notes, Arrays.copyOf(cols.songIds, ord * 2));
+        }
+        cols.songIds[ord] = songId;
+        songOrdinals.put(songId, ord);
+        songIdCount++;
+        return ord;
+    }
+
+    // Code 0 = kein Mood, 1..255 = Wörterbuch; ist es voll, landet der Wert in overflowMoods
+    private byte moodCode(int row, String mood) {
+        if (mood == null) return 0;
+        Integer code = moodCodes.get(mood);
+        if (code == null) {
+            if (moodCount == MAX_MOOD_CODES) {
+                cols.overflowMoods.put(row, mood);
+                return 0;
+            }
+            code = ++moodCount;
+            cols.moods[code] = mood;
+            moodCodes.put(mood, code);
+        }
+        return (byte) (int) code;
+    }
+
+    private void storeNote(int row, String note) {
+        Columns c = cols;
+        if (note == null) {
+            c.noteStart[row] = 0;
+            c.noteLength[row] = NO_NOTE;
+            return;
+        }
+        int needed = notesUsed + note.length();
+        if (needed > c.notes.length) {
+            char[] grown = Arrays.copyOf(c.notes, Math.max(needed, c.notes.length * 2));
+            cols = c = new Columns(c, c.millis.length, grown, c.songIds);
+        }
+        note.getChars(0, note.length(), c.notes, notesUsed);
+        c.noteStart[row] = notesUsed;
+        c.noteLength[row] = note.length();
+        notesUsed = needed;
+    }
+
+    private void publish() {
+        published = new View(cols, size, null);
+        publishedByTime = new View(cols, size, order);
+    }
+
+    // Sicht auf die ersten size Zeilen; mit order in Zeitreihenfolge, sonst in Einfügereihenfolge
+    private final class View extends AbstractList<ListeningSession> implements RandomAccess {
+        private final Columns c;
+        private final int size;
+        private final int[] order;
+
+        View(Columns c, int size, int[] order) {
+            this.c = c;
+            this.size = size;
+            this.order = order;
+        }
+
+        @Override
+        public ListeningSession get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+            int row = order == null ? index : order[index];
+            return new ListeningSession(id(row), songId(row), timestamp(row), mood(row), note(row), rating(row));
+        }
+
+        @Override
+        public int size() { return size; }
+
+        int lowerBound(Instant ts) {
+            return lowerBound(ts.toEpochMilli(), ts.getNano() % 1_000_000);
+        }
+
+        // Erste Position in der Zeitordnung mit Zeitstempel >= (millis, nanos)
+        int lowerBound(long millis, int nanos) {
+            int lo = 0, hi = size;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                int row = order[mid];
+                int cmp = Long.compare(c.millis[row], millis);
+                if (cmp == 0) cmp = Integer.compare(c.nanos[row], nanos);
+                if (cmp < 0) lo = mid + 1;
+                else hi = mid;
+            }
+            return lo;
+        }
+
+        private String id(int row) {
+            return switch (c.idKind[row]) {
+                case ID_UUID -> new UUID(c.idHi[row], c.idLo[row]).toString();
+                case ID_COMPACT -> Ids.encode(c.idHi[row]);
+                case ID_OTHER -> c.otherIds.get(row);
+                default -> null;
+            };
+        }
+
+        private String songId(int row) {
+            int ord = c.songOrd[row];
+            return ord < 0 ? null : c.songIds[ord];
+        }
+
+        Instant timestamp(int row) {
+            long ms = c.millis[row];
+            if (ms == NO_TIMESTAMP) return null;
+            return Instant.ofEpochMilli(ms).plusNanos(c.nanos[row]);
+        }
+
+        private String mood(int row) {
+            int code = c.mood[row] & 0xFF;
+            return code == 0 ? c.overflowMoods.get(row) : c.moods[code];
+        }
+
+        private String note(int row) {
+            int length = c.noteLength[row];
+            return length == NO_NOTE ? null : new String(c.notes, c.noteStart[row], length);
+        }
+
+        Integer rating(int row) {
+            int r = c.rating[row];
+            return r == NO_RATING ? null : r;
+        }
+    }
+}
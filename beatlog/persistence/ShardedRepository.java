@@ -0,0 +1,410 @@
+package ch.tbz.beatlog.persistence;
+
+import ch.tbz.beatlog.common.MergeResult;
+import ch.tbz.beatlog.common.Page;
+import ch.tbz.beatlog.common.SortOrder;
+import ch.tbz.beatlog.common.ValidationException;
+import ch.tbz.beatlog.domain.DataSnapshot;
+import ch.tbz.beatlog.domain.ListeningSession;
+import ch.tbz.beatlog.domain.Song;
+import ch.tbz.beatlog.domain.SongStats;
+import com.google.gson.JsonParseException;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Verteilt die Daten per Hash auf {@code shards.count} (Standard 8) unabhängige
+ * {@link JsonRepository}s in Unterordnern {@code shard-00}, {@code shard-01}, ... von
+ * {@code data.dir}. Songs werden nach Song-ID verteilt, Sessions nach der Song-ID, zu der
+ * sie gehören: alle Sessions und Kennzahlen eines Songs liegen so im selben Shard.
+ *
+ * <p>Eine Änderung schreibt nur die Dateien der betroffenen Shards. Beim ersten Zugriff
+ * werden alle Shards parallel geladen. Listen über alle Shards sind Sichten ohne Kopie;
+ * Songs kommen Shard für Shard, Sessions nach Zeit werden aus den Shards gemischt.
+ * Export und Import arbeiten weiterhin mit einem einzigen {@link DataSnapshot}.
+ *
+ * <p>Die Shard-Anzahl wird in {@code shards.properties} festgehalten und darf sich
+ * später nicht ändern, sonst lägen Datensätze im falschen Shard.
+ */
+public class ShardedRepository implements Repository {
+
+    private static final Comparator<ListeningSession> BY_TIME =
+            Comparator.comparing(ListeningSession::getTimestamp, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private final List<JsonRepository> shards;
+    private final JsonStorageFormat json;
+    private volatile boolean loaded = false;
+    // Zusammenführen arbeitet mit Plänen der einzelnen Shards; Importe deshalb hier serialisieren
+    private final Object importLock = new Object();
+
+    public ShardedRepository(Properties config) {
+        int count = Integer.parseInt(config.getProperty("shards.count", "8"));
+        if (count < 1) throw new IllegalArgumentException("shards.count muss mindestens 1 sein.");
+        Path dataDir = Path.of(Objects.requireNonNullElse(config.getProperty("data.dir"), "data"));
+        checkShardCount(dataDir, count);
+        this.json = JsonStorageFormat.fromConfig(config);
+
+        List<JsonRepository> list = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Properties shardConfig = new Properties();
+            shardConfig.putAll(config);
+            shardConfig.setProperty("data.dir", dataDir.resolve(String.format("shard-%02d", i)).toString());
+            list.add(new JsonRepository(shardConfig));
+        }
+        this.shards = List.copyOf(list);
+    }
+
+    private static void checkShardCount(Path dataDir, int count) {
+        Path marker = dataDir.resolve("shards.properties");
+        try {
+            Properties p = new Properties();
+            if (Files.exists(marker)) {
+                try (Reader r = Files.newBufferedReader(marker)) {
+                    p.load(r);
+                }
+                int stored = Integer.parseInt(p.getProperty("count", "-1"));
+                if (stored != count) {
+                    throw new IllegalStateException("Daten wurden mit " + stored + " Shards angelegt, konfiguriert sind " + count + ".");
+                }
+                return;
+            }
+            Files.createDirectories(dataDir);
+            p.setProperty("count", String.valueOf(count));
+            try (Writer w = Files.newBufferedWriter(marker)) {
+                p.store(w, "BeatLog Shards");
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Shard-Konfiguration nicht lesbar: " + e.getMessage(), e);
+        }
+    }
+
+    private JsonRepository shardFor(String songId) {
+        return shards.get(songId == null ? 0 : Math.floorMod(songId.hashCode(), shards.size()));
+    }
+
+    private <T> Map<JsonRepository, List<T>> partition(Collection<T> items, Function<T, String> songId) {
+        Map<JsonRepository, List<T>> out = new LinkedHashMap<>();
+        for (T item : items) {
+            out.computeIfAbsent(shardFor(item == null ? null : songId.apply(item)), k -> new ArrayList<>()).add(item);
+        }
+        return out;
+    }
+
+    // Alle Shards parallel laden; jeder Shard lädt Songs und Sessions selbst nochmals parallel
+    private void ensureLoaded() {
+        if (loaded) return;
+        synchronized (this) {
+            if (loaded) return;
+            ExecutorService pool = Executors.newFixedThreadPool(Math.min(shards.size(),
+                    Runtime.getRuntime().availableProcessors() * 2));
+            try {
+                List<Future<?>> tasks = new ArrayList<>();
+                for (JsonRepository shard : shards) {
+                    tasks.add(pool.submit(() -> { shard.loadAllSongs(); }));
+                    tasks.add(pool.submit(() -> { shard.loadAllSessions(); }));
+                }
+                for (Future<?> f : tasks) f.get();
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException re) throw re;
+                throw new RuntimeException("Fehler beim Laden: " + e.getCause().getMessage(), e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Laden unterbrochen", e);
+            } finally {
+                pool.shutdown();
+            }
+            loaded = true;
+        }
+    }
+
+    @Override
+    public void saveSong(Song song) {
+        ensureLoaded();
+        shardFor(song.getId()).saveSong(song);
+    }
+
+    @Override
+    public void saveSongs(Collection<Song> songs) {
+        ensureLoaded();
+        partition(songs, Song::getId).forEach(JsonRepository::saveSongs);
+    }
+
+    @Override
+    public Optional<Song> findSongById(String id) {
+        ensureLoaded();
+        return shardFor(id).findSongById(id);
+    }
+
+    @Override
+    public Map<String, Song> findSongsByIds(Collection<String> ids) {
+        ensureLoaded();
+        Map<String, Song> out = new HashMap<>();
+        partition(ids, id -> id).forEach((shard, part) -> out.putAll(shard.findSongsByIds(part)));
+        return out;
+    }
+
+    @Override
+    public List<Song> loadAllSongs() {
+        ensureLoaded();
+        return concat(JsonRepository::loadAllSongs);
+    }
+
+    @Override
+    public List<Song> filterSongs(String mood, Integer minRating, String tag) {
+        ensureLoaded();
+        List<Song> out = new ArrayList<>();
+        for (JsonRepository shard : shards) out.addAll(shard.filterSongs(mood, minRating, tag));
+        return out;
+    }
+
+    @Override
+    public Page<Song> pageSongs(int offset, int limit) {
+        ensureLoaded();
+        return Page.of(loadAllSongs(), offset, limit, SortOrder.ASCENDING);
+    }
+
+    @Override
+    public void deleteSong(String id) {
+        ensureLoaded();
+        shardFor(id).deleteSong(id);
+    }
+
+    @Override
+    public void saveSession(ListeningSession session) {
+        ensureLoaded();
+        shardFor(session.getSongId()).saveSession(session);
+    }
+
+    @Override
+    public void saveSessions(Collection<ListeningSession> sessions) {
+        ensureLoaded();
+        partition(sessions, ListeningSession::getSongId).forEach(JsonRepository::saveSessions);
+    }
+
+    @Override
+    public List<ListeningSession> loadAllSessions() {
+        ensureLoaded();
+        return concat(JsonRepository::loadAllSessions);
+    }
+
+    @Override
+    public Page<ListeningSession> pageSessions(int offset, int limit, SortOrder order) {
+        ensureLoaded();
+        if (offset < 0) throw new ValidationException("Offset darf nicht negativ sein.");
+        if (limit < 0) throw new ValidationException("Limit darf nicht negativ sein.");
+        int needed = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+        int total = 0;
+        List<List<ListeningSession>> heads = new ArrayList<>(shards.size());
+        for (JsonRepository shard : shards) {
+            Page<ListeningSession> p = shard.pageSessions(0, needed, order);
+            heads.add(p.getItems());
+            total += p.getTotal();
+        }
+        Comparator<ListeningSession> cmp = order == SortOrder.DESCENDING ? BY_TIME.reversed() : BY_TIME;
+        List<ListeningSession> merged = merge(heads, cmp, needed);
+        return new Page<>(merged.subList(Math.min(offset, merged.size()), merged.size()), offset, total);
+    }
+
+    @Override
+    public List<ListeningSession> findSessionsBetween(Instant from, Instant to) {
+        ensureLoaded();
+        List<List<ListeningSession>> parts = new ArrayList<>(shards.size());
+        for (JsonRepository shard : shards) parts.add(shard.findSessionsBetween(from, to));
+        return merge(parts, BY_TIME, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<ListeningSession> findLatestSessions(int n) {
+        ensureLoaded();
+        List<List<ListeningSession>> parts = new ArrayList<>(shards.size());
+        for (JsonRepository shard : shards) parts.add(shard.findLatestSessions(n));
+        return merge(parts, BY_TIME.reversed(), n);
+    }
+
+    @Override
+    public List<ListeningSession> findSessionsBySong(String songId) {
+        ensureLoaded();
+        return shardFor(songId).findSessionsBySong(songId);
+    }
+
+    @Override
+    public SongStats findSongStats(String songId) {
+        ensureLoaded();
+        return shardFor(songId).findSongStats(songId);
+    }
+
+    @Override
+    public Map<String, SongStats> findSongStatsByIds(Collection<String> songIds) {
+        ensureLoaded();
+        Map<String, SongStats> out = new HashMap<>();
+        partition(songIds, id -> id).forEach((shard, part) -> out.putAll(shard.findSongStatsByIds(part)));
+        return out;
+    }
+
+    @Override
+    public DataSnapshot getSnapshot() {
+        ensureLoaded();
+        return new DataSnapshot(concat(JsonRepository::loadAllSongs), concat(JsonRepository::loadAllSessions));
+    }
+
+    @Override
+    public void replaceAll(DataSnapshot snapshot) {
+        ensureLoaded();
+        Map<JsonRepository, List<Song>> songs = snapshot.getSongs() == null ? Map.of()
+                : partition(snapshot.getSongs(), Song::getId);
+        Map<JsonRepository, List<ListeningSession>> sessions = snapshot.getSessions() == null ? Map.of()
+                : partition(snapshot.getSessions(), ListeningSession::getSongId);
+        synchronized (importLock) {
+            for (JsonRepository shard : shards) {
+                shard.replaceAll(new DataSnapshot(songs.getOrDefault(shard, List.of()),
+                        sessions.getOrDefault(shard, List.of())));
+            }
+        }
+    }
+
+    @Override
+    public void exportAll(String filePath) {
+        DataSnapshot snap = getSnapshot();
+        Path target = Path.of(filePath);
+        try {
+            if (target.getParent() != null && !Files.exists(target.getParent())) {
+                Files.createDirectories(target.getParent());
+            }
+            json.writeSnapshot(target, snap);
+        } catch (IOException e) {
+            throw new RuntimeException("Export fehlgeschlagen: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void importAll(String filePath) {
+        Path src = Path.of(filePath);
+        if (!Files.exists(src)) throw new RuntimeException("Import-Datei nicht gefunden: " + filePath);
+        DataSnapshot snap;
+        try {
+            snap = json.readSnapshot(src);
+        } catch (IOException | JsonParseException | IllegalStateException e) {
+            throw new RuntimeException("Import fehlgeschlagen: " + e.getMessage(), e);
+        }
+        replaceAll(snap);
+    }
+
+    // Ein Durchgang über die Datei; jeder Datensatz geht an den Plan seines Shards.
+    // Wechselt eine Session den Song und damit den Shard, zählt sie im alten als gelöscht und im neuen als neu.
+    @Override
+    public MergeResult mergeAll(String filePath) {
+        Path src = Path.of(filePath);
+        if (!Files.exists(src)) throw new RuntimeException("Import-Datei nicht gefunden: " + filePath);
+        ensureLoaded();
+        synchronized (importLock) {
+            Map<JsonRepository, MergePlan> plans = new LinkedHashMap<>();
+            for (JsonRepository shard : shards) plans.put(shard, shard.newMergePlan());
+            try {
+                json.readSnapshot(src,
+                        song -> plans.get(shardFor(song.getId())).song(song),
+                        session -> plans.get(shardFor(session.getSongId())).session(session));
+            } catch (IOException | JsonParseException | IllegalStateException e) {
+                throw new RuntimeException("Import fehlgeschlagen: " + e.getMessage(), e);
+            }
+            MergeResult total = new MergeResult(0, 0, 0, 0, 0, 0, 0, 0);
+            for (Map.Entry<JsonRepository, MergePlan> e : plans.entrySet()) {
+                MergePlan plan = e.getValue();
+                plan.finish();
+                e.getKey().applyMerge(plan);
+                total = total.plus(plan.result());
+            }
+            return total;
+        }
+    }
+
+    @Override
+    public void flush() {
+        for (JsonRepository shard : shards) shard.flush();
+    }
+
+    @Override
+    public void close() {
+        RuntimeException first = null;
+        for (JsonRepository shard : shards) {
+            try {
+                shard.close();
+            } catch (RuntimeException e) {
+                if (first == null) first = e;
+            }
+        }
+        if (first != null) throw first;
+    }
+
+    private <T> List<T> concat(Function<JsonRepository, List<T>> part) {
+        List<List<T>> parts = new ArrayList<>(shards.size());
+        for (JsonRepository shard : shards) parts.add(part.apply(shard));
+        return new Concat<>(parts);
+    }
+
+    // k-Wege-Mischen bereits sortierter Listen, höchstens limit Elemente
+    private static <T> List<T> merge(List<List<T>> sorted, Comparator<T> cmp, int limit) {
+        PriorityQueue<int[]> heads = new PriorityQueue<>(Math.max(1, sorted.size()),
+                (a, b) -> {
+                    int c = cmp.compare(sorted.get(a[0]).get(a[1]), sorted.get(b[0]).get(b[1]));
+                    return c != 0 ? c : Integer.compare(a[0], b[0]);
+                });
+        int size = 0;
+        for (int i = 0; i < sorted.size(); i++) {
+            size += sorted.get(i).size();
+            if (!sorted.get(i).isEmpty()) heads.add(new int[]{i, 0});
+        }
+        List<T> out = new ArrayList<>(Math.min(size, limit));
+        while (!heads.isEmpty() && out.size() < limit) {
+            int[] head = heads.poll();
+            List<T> list = sorted.get(head[0]);
+            out.add(list.get(head[1]));
+            if (++head[1] < list.size()) heads.add(head);
+        }
+        return out;
+    }
+
+    // Aneinandergehängte Sicht auf mehrere Listen, Zugriff per Binärsuche über die Startpositionen
+    private static final class Concat<T> extends AbstractList<T> implements RandomAccess {
+        private final List<List<T>> parts;
+        private final int[] starts;
+        private final int size;
+
+        Concat(List<List<T>> parts) {
+            this.parts = parts;
+            this.starts = new int[parts.size()];
+            int pos = 0;
+            for (int i = 0; i < parts.size(); i++) {
+                starts[i] = pos;
+                pos += parts.get(i).size();
+            }
+            this.size = pos;
+        }
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || index >= size) throw new IndexOutOfBoundsException(index);
+            int part = Arrays.binarySearch(starts, index);
+            if (part < 0) {
+                part = -part - 2;
+            } else {
+                // leere Teile haben dieselbe Startposition wie ihr Nachfolger
+                while (part + 1 < starts.length && starts[part + 1] == index) part++;
+            }
+            return parts.get(part).get(index - starts[part]);
+        }
+
+        @Override
+        public int size() { return size; }
+    }
+}
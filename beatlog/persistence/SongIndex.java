@@ -0,0 +1,155 @@
+package ch.tbz.beatlog.persistence;
+
+import ch.tbz.beatlog.common.Dictionary;
+import ch.tbz.beatlog.domain.Song;
+
+import java.util.*;
+
+/**
+ * Sekundärindizes über Songs (Mood, Tag, Rating). Jeder Song bekommt eine Ordinalzahl,
+ * die Posting-Listen sind BitSets über diese Ordinalzahlen. Die Reihenfolge der
+ * Ordinalzahlen entspricht der Einfügereihenfolge im Repository.
+ */
+class SongIndex {
+
+    private static final int MIN_RATING = 1;
+    private static final int MAX_RATING = 10;
+
+    // Eintrag merkt sich die indizierten Schlüssel, damit auch nach einer Mutation
+    // des Song-Objekts korrekt ausgetragen werden kann
+    private static final class Entry {
+        final Song song;
+        final int mood;
+        final int[] tags;
+        final int rating;
+
+        Entry(Song song) {
+            this.song = song;
+            this.mood = song.getMoodKey();
+            this.tags = song.getTagKeys();
+            this.rating = song.getRating();
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final BitSet live = new BitSet();
+    // Posting-Listen nach gefaltetem Wörterbuch-Code (siehe Dictionary)
+    private final List<BitSet> byMood = new ArrayList<>();
+    private final List<BitSet> byTag = new ArrayList<>();
+    // Bucket 0 = Rating < 1, Bucket 11 = Rating > 10
+    private final BitSet[] byRating = new BitSet[MAX_RATING + 2];
+    private int holes;
+
+    SongIndex() {
+        for (int i = 0; i < byRating.length; i++) byRating[i] = new BitSet();
+    }
+
+    void put(Song song) {
+        Integer ord = ordinals.get(song.getId());
+        if (ord == null) {
+            ord = entries.size();
+            entries.add(null);
+            ordinals.put(song.getId(), ord);
+        } else {
+            unindex(ord);
+        }
+        Entry e = new Entry(song);
+        entries.set(ord, e);
+        live.set(ord);
+        if (e.mood != Dictionary.NONE) posting(byMood, e.mood).set(ord);
+        for (int t : e.tags) posting(byTag, t).set(ord);
+        byRating[bucket(e.rating)].set(ord);
+    }
+
+    void remove(String id) {
+        Integer ord = ordinals.remove(id);
+        if (ord == null) return;
+        unindex(ord);
+        entries.set(ord, null);
+        live.clear(ord);
+        if (++holes > 64 && holes > entries.size() / 2) compact();
+    }
+
+    void rebuild(Collection<Song> songs) {
+        clear();
+        for (Song s : songs) put(s);
+    }
+
+    void clear() {
+        entries.clear();
+        ordinals.clear();
+        live.clear();
+        byMood.clear();
+        byTag.clear();
+        for (BitSet b : byRating) b.clear();
+        holes = 0;
+    }
+
+    // Alle Songs in Einfügereihenfolge
+    List<Song> songs() {
+        List<Song> out = new ArrayList<>(ordinals.size());
+        for (Entry e : entries) if (e != null) out.add(e.song);
+        return out;
+    }
+
+    int size() { return ordinals.size(); }
+
+    List<Song> filter(String mood, Integer minRating, String tag) {
+        BitSet result = (BitSet) live.clone();
+        if (mood != null) and(result, existing(byMood, Dictionary.MOODS.lookupFolded(mood)));
+        if (tag != null) and(result, existing(byTag, Dictionary.TAGS.lookupFolded(tag)));
+        if (minRating != null) result.and(ratingAtLeast(minRating));
+
+        List<Song> out = new ArrayList<>(result.cardinality());
+        for (int i = result.nextSetBit(0); i >= 0; i = result.nextSetBit(i + 1)) {
+            out.add(entries.get(i).song);
+        }
+        return out;
+    }
+
+    private BitSet ratingAtLeast(int min) {
+        BitSet bits = new BitSet();
+        for (int r = Math.max(min, MIN_RATING); r <= MAX_RATING; r++) bits.or(byRating[r]);
+        // Randbuckets enthalten gemischte Werte, dort einzeln prüfen
+        for (int b : new int[]{0, MAX_RATING + 1}) {
+            BitSet edge = byRating[b];
+            for (int i = edge.nextSetBit(0); i >= 0; i = edge.nextSetBit(i + 1)) {
+                if (entries.get(i).rating >= min) bits.set(i);
+            }
+        }
+        return bits;
+    }
+
+    private void unindex(int ord) {
+        Entry e = entries.get(ord);
+        if (e == null) return;
+        if (e.mood != Dictionary.NONE) byMood.get(e.mood).clear(ord);
+        for (int t : e.tags) byTag.get(t).clear(ord);
+        byRating[bucket(e.rating)].clear(ord);
+    }
+
+    private void compact() {
+        rebuild(songs());
+    }
+
+    private static void and(BitSet result, BitSet posting) {
+        if (posting == null) result.clear();
+        else result.and(posting);
+    }
+
+    private static BitSet posting(List<BitSet> postings, int key) {
+        while (postings.size() <= key) postings.add(new BitSet());
+        return postings.get(key);
+    }
+
+    private static BitSet existing(List<BitSet> postings, int key) {
+        return key == Dictionary.NONE || key >= postings.size() ? null : postings.get(key);
+    }
+
+    private static int bucket(int rating) {
+        if (rating < MIN_RATING) return 0;
+        if (rating > MAX_RATING) return MAX_RATING + 1;
+        return rating;
+    }
+}
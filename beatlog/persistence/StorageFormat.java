@@ -0,0 +1,44 @@
+package ch.tbz.beatlog.persistence;
+
+import ch.tbz.beatlog.domain.ListeningSession;
+import ch.tbz.beatlog.domain.Song;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Dateiformat der Basisdateien (songs/sessions). Gelesen wird Datensatz für Datensatz
+ * in einen Consumer, damit keine Zwischenliste entsteht.
+ */
+interface StorageFormat {
+    void readSongs(Path file, Consumer<Song> sink) throws IOException;
+    void writeSongs(Path file, Iterable<Song> songs) throws IOException;
+
+    void readSessions(Path file, Consumer<ListeningSession> sink) throws IOException;
+    void writeSessions(Path file, Iterable<ListeningSession> sessions) throws IOException;
+
+    String fileExtension();
+
+    /**
+     * Setzt eine fertig geschriebene temporäre Datei an die Stelle von {@code file}: erst
+     * fsync, dann atomar umbenennen, dann das Verzeichnis sichern. Nach einem Absturz liegt
+     * so entweder die alte oder die neue Fassung vollständig auf der Platte.
+     */
+    static void replaceDurably(Path tmp, Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            ch.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Path dir = file.toAbsolutePath().getParent();
+        try (FileChannel ch = FileChannel.open(dir, StandardOpenOption.READ)) {
+            ch.force(true);
+        } catch (IOException ignored) {
+            // nicht jedes Betriebssystem erlaubt fsync auf Verzeichnissen (z.B. Windows)
+        }
+    }
+}
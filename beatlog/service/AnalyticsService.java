@@ -0,0 +1,118 @@
+package ch.tbz.beatlog.service;
+
+import ch.tbz.beatlog.domain.DataSnapshot;
+import ch.tbz.beatlog.domain.ListeningSession;
+import ch.tbz.beatlog.domain.SessionWithSong;
+import ch.tbz.beatlog.domain.Song;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.temporal.TemporalAdjusters;
+import java.util.*;
+
+/**
+ * Laufend nachgeführte Hörstatistiken. Pro Session werden nur Zähler erhöht (Tag, Woche,
+ * Artist, Mood, Genre); Abfragen lesen die Zähler und kosten O(Buckets) statt O(Historie).
+ * Registrierung über {@link LibraryService#addSessionListener}.
+ */
+public class AnalyticsService implements SessionListener {
+
+    private final ZoneId zone;
+    private final NavigableMap<LocalDate, Integer> playsPerDay = new TreeMap<>();
+    // Schlüssel = Montag der Woche (ISO)
+    private final NavigableMap<LocalDate, Integer> playsPerWeek = new TreeMap<>();
+    private final Map<String, Integer> playsByArtist = new HashMap<>();
+    private final Map<String, Integer> playsByMood = new HashMap<>();
+    private final Map<String, Integer> playsByGenre = new HashMap<>();
+    private int totalPlays;
+
+    public AnalyticsService() {
+        this(ZoneId.systemDefault());
+    }
+
+    public AnalyticsService(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    @Override
+    public synchronized void onSessionsLogged(List<SessionWithSong> sessions) {
+        for (SessionWithSong s : sessions) count(s.getSession(), s.getSong().orElse(null));
+    }
+
+    @Override
+    public synchronized void onReset(DataSnapshot snapshot) {
+        playsPerDay.clear();
+        playsPerWeek.clear();
+        playsByArtist.clear();
+        playsByMood.clear();
+        playsByGenre.clear();
+        totalPlays = 0;
+        Map<String, Song> songs = new HashMap<>();
+        if (snapshot.getSongs() != null) for (Song s : snapshot.getSongs()) songs.put(s.getId(), s);
+        if (snapshot.getSessions() != null) {
+            for (ListeningSession s : snapshot.getSessions()) count(s, songs.get(s.getSongId()));
+        }
+    }
+
+    private void count(ListeningSession session, Song song) {
+        totalPlays++;
+        if (session.getTimestamp() != null) {
+            LocalDate day = LocalDate.ofInstant(session.getTimestamp(), zone);
+            playsPerDay.merge(day, 1, Integer::sum);
+            playsPerWeek.merge(day.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)), 1, Integer::sum);
+        }
+        // Mood der Session hat Vorrang vor dem Mood des Songs
+        String mood = session.getMood() != null ? session.getMood() : song == null ? null : song.getMood();
+        // Moods wie beim Filtern ohne Gross-/Kleinschreibung
+        increment(playsByMood, mood == null ? null : mood.toLowerCase(Locale.ROOT));
+        if (song != null) {
+            increment(playsByArtist, song.getArtist());
+            increment(playsByGenre, song.getGenre());
+        }
+    }
+
+    private static void increment(Map<String, Integer> counts, String key) {
+        if (key == null || key.isBlank()) return;
+        counts.merge(key.trim(), 1, Integer::sum);
+    }
+
+    public synchronized int getTotalPlays() { return totalPlays; }
+
+    // Tage ohne Plays fehlen in der Map; Grenzen inklusive
+    public synchronized SortedMap<LocalDate, Integer> playsPerDay(LocalDate from, LocalDate to) {
+        return new TreeMap<>(playsPerDay.subMap(from, true, to, true));
+    }
+
+    public synchronized SortedMap<LocalDate, Integer> playsPerWeek(LocalDate from, LocalDate to) {
+        LocalDate monday = from.with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY));
+        return new TreeMap<>(playsPerWeek.subMap(monday, true, to, true));
+    }
+
+    public synchronized Map<String, Integer> topArtists(int n) { return top(playsByArtist, n); }
+    public synchronized Map<String, Integer> topMoods(int n) { return top(playsByMood, n); }
+
+    // Alle Genres, absteigend nach Anzahl
+    public synchronized Map<String, Integer> genreDistribution() { return top(playsByGenre, playsByGenre.size()); }
+
+    // Die n grössten Zähler absteigend (bei Gleichstand alphabetisch), über einen Heap der Grösse n
+    private static Map<String, Integer> top(Map<String, Integer> counts, int n) {
+        Map<String, Integer> out = new LinkedHashMap<>();
+        if (n <= 0) return out;
+        Comparator<Map.Entry<String, Integer>> rank = Map.Entry.<String, Integer>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey());
+        PriorityQueue<Map.Entry<String, Integer>> heap = new PriorityQueue<>(n, rank.reversed());
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            if (heap.size() < n) {
+                heap.add(e);
+            } else if (rank.compare(e, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(e);
+            }
+        }
+        List<Map.Entry<String, Integer>> sorted = new ArrayList<>(heap);
+        sorted.sort(rank);
+        for (Map.Entry<String, Integer> e : sorted) out.put(e.getKey(), e.getValue());
+        return out;
+    }
+}
@@ -0,0 +1,220 @@
+package ch.tbz.beatlog.service;
+
+import ch.tbz.beatlog.domain.Song;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Füllt eine Zielzeit (z.B. 60 Minuten Laufen) mit Songs und maximiert dabei die Summe
+ * der Ratings; jeder Song höchstens einmal, Gesamtdauer höchstens die Zielzeit.
+ *
+ * <p>Kleine Eingaben (Songs × Sekunden bis {@link #MAX_DP_CELLS}) werden per DP exakt
+ * gelöst. Sonst, oder wenn die DP das Zeitbudget sprengt: Vorauswahl der besten Songs
+ * nach Rating pro Sekunde, gierig auffüllen, danach lokale Suche (Hinzufügen und
+ * Tauschen), bis nichts mehr besser wird oder das Zeitbudget aufgebraucht ist.
+ * Bei gleichem Rating gewinnt die Lösung, die die Zielzeit besser ausfüllt.
+ */
+public class DurationTargetStrategy implements SmartPlaylistStrategy {
+
+    private static final long MAX_DP_CELLS = 20_000_000L;
+    private static final int MAX_CANDIDATES = 4096;
+
+    private final int targetSec;
+    private final long latencyNanos;
+
+    public DurationTargetStrategy() {
+        this(Duration.ofMinutes(60), Duration.ofMillis(100));
+    }
+
+    public DurationTargetStrategy(Duration target, Duration latencyBudget) {
+        if (target.isNegative()) throw new IllegalArgumentException("Zielzeit darf nicht negativ sein.");
+        this.targetSec = (int) Math.min(target.getSeconds(), Integer.MAX_VALUE);
+        this.latencyNanos = latencyBudget.toNanos();
+    }
+
+    // Gleiche Strategie mit anderer Zielzeit
+    public DurationTargetStrategy withTarget(Duration target) {
+        return new DurationTargetStrategy(target, Duration.ofNanos(latencyNanos));
+    }
+
+    public List<Song> generate(List<Song> inputSongs) {
+        long deadline = System.nanoTime() + latencyNanos;
+        List<Song> fitting = new ArrayList<>();
+        int seen = 0;
+        for (Song s : inputSongs) {
+            // Budget aufgebraucht: mit dem weiterarbeiten, was bis hier passt (mindestens ein Block)
+            if ((++seen & 4095) == 0 && fitting.size() >= MAX_CANDIDATES && System.nanoTime() > deadline) break;
+            if (s.getDurationSec() > 0 && s.getDurationSec() <= targetSec) fitting.add(s);
+        }
+        if (fitting.isEmpty()) return new ArrayList<>();
+
+        boolean[] chosen = null;
+        if ((long) fitting.size() * (targetSec + 1) <= MAX_DP_CELLS) chosen = exact(fitting, deadline);
+        if (chosen == null) {
+            fitting = candidates(fitting, deadline);
+            chosen = greedyWithLocalSearch(fitting, deadline);
+        }
+        List<Song> out = new ArrayList<>();
+        for (int i = 0; i < chosen.length; i++) if (chosen[i]) out.add(fitting.get(i));
+        return out;
+    }
+
+    public String getName() {
+        return "Zielzeit " + (targetSec / 60) + " Min.";
+    }
+
+    // Rating und Füllgrad in einem Wert: Rating zählt zuerst, Dauer entscheidet bei Gleichstand
+    private long value(Song s) {
+        return (long) Math.max(s.getRating(), 0) * (targetSec + 1) + s.getDurationSec();
+    }
+
+    /** 0/1-Rucksack über Sekunden; null, wenn die Deadline vorher erreicht wird. */
+    private boolean[] exact(List<Song> songs, long deadline) {
+        int n = songs.size();
+        int cap = targetSec;
+        long[] best = new long[cap + 1];
+        long[] take = new long[(int) (((long) n * (cap + 1) + 63) >>> 6)];
+        for (int i = 0; i < n; i++) {
+            if (System.nanoTime() > deadline) return null;
+            Song s = songs.get(i);
+            int w = s.getDurationSec();
+            long v = value(s);
+            long row = (long) i * (cap + 1);
+            for (int c = cap; c >= w; c--) {
+                long candidate = best[c - w] + v;
+                if (candidate > best[c]) {
+                    best[c] = candidate;
+                    long bit = row + c;
+                    take[(int) (bit >>> 6)] |= 1L << bit;
+                }
+            }
+        }
+        boolean[] chosen = new boolean[n];
+        int c = cap;
+        for (int i = n - 1; i >= 0; i--) {
+            long bit = (long) i * (cap + 1) + c;
+            if ((take[(int) (bit >>> 6)] & (1L << bit)) != 0) {
+                chosen[i] = true;
+                c -= songs.get(i).getDurationSec();
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Mehr Kandidaten als in die Zielzeit passen bringen kaum etwas: die besten nach Rating
+     * pro Sekunde über einen primitiven Min-Heap. Läuft die Deadline ab, zählt, was bis
+     * dahin gesehen wurde, mindestens aber die ersten {@link #MAX_CANDIDATES} Songs.
+     */
+    private List<Song> candidates(List<Song> songs, long deadline) {
+        if (songs.size() <= MAX_CANDIDATES) return songs;
+        double[] key = new double[MAX_CANDIDATES];
+        int[] index = new int[MAX_CANDIDATES];
+        int size = 0;
+        for (int i = 0; i < songs.size(); i++) {
+            // der erste Block zählt immer, sonst bliebe bei knappem Budget die Playlist leer
+            if (i >= MAX_CANDIDATES && (i & 4095) == 0 && System.nanoTime() > deadline) break;
+            Song s = songs.get(i);
+            double density = (double) Math.max(s.getRating(), 0) / s.getDurationSec();
+            if (size < MAX_CANDIDATES) {
+                key[size] = density;
+                index[size] = i;
+                siftUp(key, index, size++);
+            } else if (density > key[0]) {
+                key[0] = density;
+                index[0] = i;
+                siftDown(key, index, size);
+            }
+        }
+        Arrays.sort(index, 0, size);
+        List<Song> out = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) out.add(songs.get(index[i]));
+        return out;
+    }
+
+    private static void siftUp(double[] key, int[] index, int pos) {
+        while (pos > 0) {
+            int parent = (pos - 1) >>> 1;
+            if (key[parent] <= key[pos]) return;
+            swap(key, index, parent, pos);
+            pos = parent;
+        }
+    }
+
+    private static void siftDown(double[] key, int[] index, int size) {
+        int pos = 0;
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= size) return;
+            if (child + 1 < size && key[child + 1] < key[child]) child++;
+            if (key[pos] <= key[child]) return;
+            swap(key, index, pos, child);
+            pos = child;
+        }
+    }
+
+    private static void swap(double[] key, int[] index, int a, int b) {
+        double k = key[a];
+        key[a] = key[b];
+        key[b] = k;
+        int i = index[a];
+        index[a] = index[b];
+        index[b] = i;
+    }
+
+    private boolean[] greedyWithLocalSearch(List<Song> songs, long deadline) {
+        int n = songs.size();
+        int[] w = new int[n];
+        long[] v = new long[n];
+        for (int i = 0; i < n; i++) {
+            w[i] = songs.get(i).getDurationSec();
+            v[i] = value(songs.get(i));
+        }
+        Integer[] byDensity = new Integer[n];
+        for (int i = 0; i < n; i++) byDensity[i] = i;
+        Arrays.sort(byDensity, (a, b) -> Double.compare((double) v[b] / w[b], (double) v[a] / w[a]));
+
+        boolean[] chosen = new boolean[n];
+        int free = targetSec;
+        for (int i : byDensity) {
+            if (w[i] <= free) {
+                chosen[i] = true;
+                free -= w[i];
+            }
+        }
+
+        boolean improved = true;
+        while (improved && System.nanoTime() < deadline) {
+            improved = false;
+            for (int out = 0; out < n && System.nanoTime() < deadline; out++) {
+                if (!chosen[out]) continue;
+                int bestIn = -1;
+                long bestGain = 0;
+                for (int in = 0; in < n; in++) {
+                    if (chosen[in] || w[in] - w[out] > free) continue;
+                    long gain = v[in] - v[out];
+                    if (gain > bestGain) {
+                        bestGain = gain;
+                        bestIn = in;
+                    }
+                }
+                if (bestIn >= 0) {
+                    chosen[out] = false;
+                    chosen[bestIn] = true;
+                    free -= w[bestIn] - w[out];
+                    improved = true;
+                }
+            }
+            // durch Tauschen frei gewordene Zeit wieder auffüllen
+            for (int i : byDensity) {
+                if (!chosen[i] && w[i] <= free) {
+                    chosen[i] = true;
+                    free -= w[i];
+                    improved = true;
+                }
+            }
+        }
+        return chosen;
+    }
+}
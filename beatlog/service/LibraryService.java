@@ -1,33 +1,51 @@
 package ch.tbz.beatlog.service;
 
+import ch.tbz.beatlog.common.BatchResult;
+import ch.tbz.beatlog.common.MergeResult;
+import ch.tbz.beatlog.common.Page;
+import ch.tbz.beatlog.common.SortOrder;
 import ch.tbz.beatlog.common.ValidationException;
 import ch.tbz.beatlog.domain.Song;
 import ch.tbz.beatlog.domain.ListeningSession;
 import ch.tbz.beatlog.domain.DataSnapshot;
+import ch.tbz.beatlog.domain.SessionWithSong;
+import ch.tbz.beatlog.domain.SongStats;
 import ch.tbz.beatlog.persistence.Repository;
 
 import java.time.Instant;
-import java.util.List;
-import java.util.Objects;
-import java.util.Optional;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 public class LibraryService {
 
     private final Repository repo;
+    private final List<SessionListener> listeners = new CopyOnWriteArrayList<>();
 
     public LibraryService(Repository repo) {
         this.repo = repo;
     }
 
+    // Der Listener wird sofort mit dem aktuellen Bestand initialisiert
+    public void addSessionListener(SessionListener listener) {
+        listeners.add(listener);
+        listener.onReset(repo.getSnapshot());
+    }
+
+    public void removeSessionListener(SessionListener listener) {
+        listeners.remove(listener);
+    }
+
     public void addSong(Song s) {
-        validateSong(s, true);
+        validateSong(s);
         repo.saveSong(s);
     }
 
     public void updateSong(Song s) {
         Objects.requireNonNull(s);
         if (s.getId() == null) throw new ValidationException("Song-ID fehlt für Update.");
-        validateSong(s, false);
+        validateSong(s);
         Optional<Song> existing = repo.findSongById(s.getId());
         if (existing.isEmpty()) throw new ValidationException("Song nicht gefunden für Update.");
         repo.saveSong(s);
@@ -40,10 +58,14 @@ public class LibraryService {
 
     public List<Song> listSongs() { return repo.loadAllSongs(); }
     public Optional<Song> getSong(String id) { return repo.findSongById(id); }
+    public Page<Song> pageSongs(int offset, int limit) { return repo.pageSongs(offset, limit); }
+    public List<Song> filterSongs(String mood, Integer minRating, String tag) {
+        return repo.filterSongs(mood, minRating, tag);
+    }
 
-    private void validateSong(Song s, boolean isCreate) {
+    private void validateSong(Song s) {
         if (s == null) throw new ValidationException("Song ist null.");
-        if (!isCreate && (s.getId() == null || s.getId().isBlank()))
+        if (s.getId() == null || s.getId().isBlank())
             throw new ValidationException("Song-ID fehlt.");
         if (s.getTitle() == null || s.getTitle().isBlank())
             throw new ValidationException("Titel darf nicht leer sein.");
@@ -56,6 +78,25 @@ public class LibraryService {
     }
 
     public void logSession(ListeningSession s) {
+        ListeningSession prepared = prepareSession(s);
+        repo.saveSession(prepared);
+        sessionsLogged(List.of(prepared));
+    }
+
+    private void sessionsLogged(List<ListeningSession> sessions) {
+        if (listeners.isEmpty()) return;
+        List<SessionWithSong> joined = joinSongs(sessions);
+        for (SessionListener l : listeners) l.onSessionsLogged(joined);
+    }
+
+    private void dataReplaced() {
+        if (listeners.isEmpty()) return;
+        DataSnapshot snapshot = repo.getSnapshot();
+        for (SessionListener l : listeners) l.onReset(snapshot);
+    }
+
+    private ListeningSession prepareSession(ListeningSession s) {
+        if (s == null) throw new ValidationException("Session ist null.");
         if (s.getSongId() == null || s.getSongId().isBlank())
             throw new ValidationException("Song-ID fehlt für Session.");
         if (s.getTimestamp() == null) {
@@ -67,15 +108,139 @@ public class LibraryService {
                     s.getNote(),
                     s.getRatingOverride());
         }
-        repo.saveSession(s);
+        return s;
+    }
+
+    public BatchResult addSongs(Collection<Song> songs) {
+        List<Song> input = new ArrayList<>(songs);
+        Object[] checked = validateAll(input, s -> {
+            validateSong(s);
+            return s;
+        });
+        List<Song> valid = new ArrayList<>(input.size());
+        List<BatchResult.RecordError> errors = collect(checked, input, Song::getId, valid);
+        if (!valid.isEmpty()) repo.saveSongs(valid);
+        return new BatchResult(valid.size(), errors);
+    }
+
+    public BatchResult logSessions(Collection<ListeningSession> sessions) {
+        List<ListeningSession> input = new ArrayList<>(sessions);
+        Object[] checked = validateAll(input, this::prepareSession);
+        List<ListeningSession> valid = new ArrayList<>(input.size());
+        List<BatchResult.RecordError> errors = collect(checked, input, ListeningSession::getId, valid);
+        if (!valid.isEmpty()) {
+            repo.saveSessions(valid);
+            sessionsLogged(valid);
+        }
+        return new BatchResult(valid.size(), errors);
+    }
+
+    // Validiert parallel; pro Index steht danach entweder der geprüfte Datensatz oder die Fehlermeldung
+    private static <T> Object[] validateAll(List<T> input, Function<T, T> validator) {
+        Object[] checked = new Object[input.size()];
+        IntStream.range(0, input.size()).parallel().forEach(i -> {
+            try {
+                checked[i] = validator.apply(input.get(i));
+            } catch (ValidationException e) {
+                checked[i] = e;
+            }
+        });
+        return checked;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<BatchResult.RecordError> collect(Object[] checked, List<T> input,
+                                                             Function<T, String> id, List<T> valid) {
+        List<BatchResult.RecordError> errors = new ArrayList<>();
+        for (int i = 0; i < checked.length; i++) {
+            if (checked[i] instanceof ValidationException e) {
+                T record = input.get(i);
+                errors.add(new BatchResult.RecordError(i, record == null ? null : id.apply(record), e.getMessage()));
+            } else {
+                valid.add((T) checked[i]);
+            }
+        }
+        return errors;
     }
 
     public List<ListeningSession> listSessions() {
         return repo.loadAllSessions();
     }
 
+    public Page<ListeningSession> pageSessions(int offset, int limit, SortOrder order) {
+        return repo.pageSessions(offset, limit, order);
+    }
+
+    public List<ListeningSession> sessionsBetween(Instant from, Instant to) {
+        if (from != null && to != null && to.isBefore(from))
+            throw new ValidationException("Ende liegt vor dem Beginn.");
+        return repo.findSessionsBetween(from, to);
+    }
+
+    public List<ListeningSession> latestSessions(int n) {
+        if (n < 0) throw new ValidationException("Anzahl darf nicht negativ sein.");
+        return repo.findLatestSessions(n);
+    }
+
+    public List<ListeningSession> sessionsOfSong(String songId) {
+        return repo.findSessionsBySong(songId);
+    }
+
+    public SongStats songStats(String songId) {
+        return repo.findSongStats(songId);
+    }
+
+    public Map<String, SongStats> songStats(Collection<String> songIds) {
+        return repo.findSongStatsByIds(songIds);
+    }
+
+    // Rating des Songs, überschrieben vom Override der letzten Session, falls vorhanden
+    public OptionalInt effectiveRating(String songId) {
+        Optional<Song> song = repo.findSongById(songId);
+        if (song.isEmpty()) return OptionalInt.empty();
+        return OptionalInt.of(repo.findSongStats(songId).effectiveRating(song.get().getRating()));
+    }
+
+    public List<SessionWithSong> listSessionsWithSongs() {
+        return joinSongs(repo.loadAllSessions());
+    }
+
+    public Page<SessionWithSong> pageSessionsWithSongs(int offset, int limit, SortOrder order) {
+        Page<ListeningSession> page = repo.pageSessions(offset, limit, order);
+        return new Page<>(joinSongs(page.getItems()), page.getOffset(), page.getTotal());
+    }
+
+    // Ein Durchgang: alle Song-IDs sammeln, einmal gesammelt nachschlagen, dann zusammenführen
+    private List<SessionWithSong> joinSongs(List<ListeningSession> sessions) {
+        Set<String> songIds = new HashSet<>();
+        for (ListeningSession s : sessions) songIds.add(s.getSongId());
+        Map<String, Song> songs = repo.findSongsByIds(songIds);
+        List<SessionWithSong> joined = new ArrayList<>(sessions.size());
+        for (ListeningSession s : sessions) joined.add(new SessionWithSong(s, songs.get(s.getSongId())));
+        return joined;
+    }
+
     public DataSnapshot snapshot() { return repo.getSnapshot(); }
-    public void replaceAll(DataSnapshot snap) { repo.replaceAll(snap); }
+    public void replaceAll(DataSnapshot snap) {
+        repo.replaceAll(snap);
+        dataReplaced();
+    }
     public void backupToFile(String path) { repo.exportAll(path); }
-    public void restoreFromFile(String path) { repo.importAll(path); }
+    public void restoreFromFile(String path) {
+        repo.importAll(path);
+        dataReplaced();
+    }
+    // Nur Einfügungen werden inkrementell gemeldet; geänderte oder gelöschte Sessions erzwingen einen Neuaufbau
+    public MergeResult mergeFromFile(String path) {
+        MergeResult result = repo.mergeAll(path);
+        if (result.hasSessionRewrites()) {
+            dataReplaced();
+        } else if (!result.getInsertedSessions().isEmpty()) {
+            List<ListeningSession> inserted = new ArrayList<>(result.getInsertedSessions());
+            inserted.sort(Comparator.comparing(ListeningSession::getTimestamp,
+                    Comparator.nullsFirst(Comparator.naturalOrder())));
+            sessionsLogged(inserted);
+        }
+        return result;
+    }
 }
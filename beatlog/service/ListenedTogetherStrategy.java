@@ -0,0 +1,179 @@
+package ch.tbz.beatlog.service;
+
+import ch.tbz.beatlog.domain.DataSnapshot;
+import ch.tbz.beatlog.domain.ListeningSession;
+import ch.tbz.beatlog.domain.SessionWithSong;
+import ch.tbz.beatlog.domain.Song;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Empfiehlt Songs, die oft im selben Hörfenster liefen wie die zuletzt gehörten.
+ *
+ * <p>Zwei Sessions gelten als "zusammen gehört", wenn ihre Zeitstempel höchstens
+ * {@code window} auseinanderliegen. Songs werden auf Ordinalzahlen abgebildet; pro Song
+ * gibt es eine Nachbarliste aus zwei int-Arrays mit höchstens {@code maxNeighbours}
+ * Einträgen. Ist sie voll, verdrängt ein neuer Nachbar den schwächsten und erbt dessen
+ * Zähler + 1 (Space-Saving), so bleiben häufige Nachbarn erhalten und der Speicher begrenzt.
+ *
+ * <p>Das Fenster ist zusätzlich auf die letzten {@code maxRecent} Sessions begrenzt, damit
+ * eine Session höchstens O(maxRecent · maxNeighbours) kostet, auch wenn ein Bulk-Import
+ * tausende Sessions mit demselben Zeitstempel liefert.
+ *
+ * <p>Neue Sessions werden nur mit dem Fenster der zuletzt geloggten verglichen; nachträglich
+ * geloggte ältere Sessions zählen deshalb erst nach einem Neuaufbau vollständig.
+ */
+public class ListenedTogetherStrategy implements SmartPlaylistStrategy, SessionListener {
+
+    private static final int SEED_COUNT = 5;
+
+    private final long windowMillis;
+    private final int maxNeighbours;
+    private final int maxRecent;
+
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    private final List<String> songIds = new ArrayList<>();
+    private final List<Neighbours> neighbours = new ArrayList<>();
+    // Sessions im aktuellen Fenster: Song-Ordinal und Zeit, älteste zuerst
+    private final ArrayDeque<long[]> recent = new ArrayDeque<>();
+    // Zuletzt gehörte Songs (neueste zuerst), Ausgangspunkt für die Empfehlung
+    private final ArrayDeque<Integer> seeds = new ArrayDeque<>();
+
+    public ListenedTogetherStrategy() {
+        this(Duration.ofMinutes(30), 32, 64);
+    }
+
+    public ListenedTogetherStrategy(Duration window, int maxNeighbours, int maxRecent) {
+        this.windowMillis = window.toMillis();
+        this.maxNeighbours = Math.max(1, maxNeighbours);
+        this.maxRecent = Math.max(1, maxRecent);
+    }
+
+    private final class Neighbours {
+        int[] keys = new int[4];
+        int[] counts = new int[4];
+        int size;
+
+        void increment(int key) {
+            int min = 0;
+            for (int i = 0; i < size; i++) {
+                if (keys[i] == key) {
+                    counts[i]++;
+                    return;
+                }
+                if (counts[i] < counts[min]) min = i;
+            }
+            if (size < maxNeighbours) {
+                if (size == keys.length) {
+                    int capacity = Math.min(maxNeighbours, size * 2);
+                    keys = Arrays.copyOf(keys, capacity);
+                    counts = Arrays.copyOf(counts, capacity);
+                }
+                keys[size] = key;
+                counts[size++] = 1;
+            } else {
+                keys[min] = key;
+                counts[min]++;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onSessionsLogged(List<SessionWithSong> sessions) {
+        for (SessionWithSong s : sessions) add(s.getSession());
+    }
+
+    @Override
+    public synchronized void onReset(DataSnapshot snapshot) {
+        ordinals.clear();
+        songIds.clear();
+        neighbours.clear();
+        recent.clear();
+        seeds.clear();
+        if (snapshot.getSessions() == null) return;
+        List<ListeningSession> byTime = new ArrayList<>(snapshot.getSessions());
+        byTime.removeIf(s -> s.getTimestamp() == null || s.getSongId() == null);
+        byTime.sort(Comparator.comparing(ListeningSession::getTimestamp));
+        for (ListeningSession s : byTime) add(s);
+    }
+
+    private void add(ListeningSession s) {
+        if (s.getSongId() == null || s.getTimestamp() == null) return;
+        int song = ordinal(s.getSongId());
+        long time = s.getTimestamp().toEpochMilli();
+
+        long newest = recent.isEmpty() ? time : Math.max(recent.peekLast()[1], time);
+        while (!recent.isEmpty() && recent.peekFirst()[1] < newest - windowMillis) recent.pollFirst();
+        for (long[] other : recent) {
+            int o = (int) other[0];
+            if (o != song && Math.abs(other[1] - time) <= windowMillis) {
+                neighbours.get(song).increment(o);
+                neighbours.get(o).increment(song);
+            }
+        }
+        if (time >= newest) {
+            recent.addLast(new long[]{song, time});
+            if (recent.size() > maxRecent) recent.pollFirst();
+        }
+
+        seeds.remove(song);
+        seeds.addFirst(song);
+        if (seeds.size() > SEED_COUNT) seeds.removeLast();
+    }
+
+    private int ordinal(String songId) {
+        Integer ord = ordinals.get(songId);
+        if (ord != null) return ord;
+        ord = songIds.size();
+        ordinals.put(songId, ord);
+        songIds.add(songId);
+        neighbours.add(new Neighbours());
+        return ord;
+    }
+
+    /** Die häufigsten Nachbarn eines Songs, absteigend nach Anzahl. */
+    public synchronized List<String> neighboursOf(String songId, int n) {
+        Integer ord = ordinals.get(songId);
+        if (ord == null || n <= 0) return List.of();
+        Neighbours nb = neighbours.get(ord);
+        Integer[] idx = new Integer[nb.size];
+        for (int i = 0; i < idx.length; i++) idx[i] = i;
+        Arrays.sort(idx, (a, b) -> Integer.compare(nb.counts[b], nb.counts[a]));
+        List<String> out = new ArrayList<>(Math.min(n, idx.length));
+        for (int i = 0; i < idx.length && out.size() < n; i++) out.add(songIds.get(nb.keys[idx[i]]));
+        return out;
+    }
+
+    @Override
+    public List<Song> generate(List<Song> inputSongs) {
+        return generate(inputSongs, inputSongs.size());
+    }
+
+    // Punkte aus den Zählern zu den zuletzt gehörten Songs; ohne Punkte in Eingabereihenfolge dahinter
+    @Override
+    public List<Song> generate(List<Song> inputSongs, int limit) {
+        Map<String, Integer> score = scores();
+        Comparator<Song> order = Comparator.comparingInt((Song s) -> score.getOrDefault(s.getId(), 0)).reversed();
+        return PlaylistService.topK(inputSongs, limit, order);
+    }
+
+    // Jüngere Seeds zählen mehr; der zuletzt gehörte Song selbst bekommt keine Punkte
+    private synchronized Map<String, Integer> scores() {
+        Map<String, Integer> score = new HashMap<>();
+        if (seeds.isEmpty()) return score;
+        int current = seeds.peekFirst();
+        int weight = SEED_COUNT;
+        for (int seed : seeds) {
+            Neighbours nb = neighbours.get(seed);
+            for (int i = 0; i < nb.size; i++) {
+                if (nb.keys[i] != current) score.merge(songIds.get(nb.keys[i]), nb.counts[i] * weight, Integer::sum);
+            }
+            weight--;
+        }
+        return score;
+    }
+
+    @Override
+    public String getName() { return "Zusammen gehört"; }
+}
@@ -0,0 +1,34 @@
+package ch.tbz.beatlog.service;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Entscheidet, ob eine Operation parallel läuft, und führt sie dann im eigenen Pool aus.
+ * Parallele Streams, die innerhalb von {@link #run} gestartet werden, verwenden diesen
+ * Pool statt des Common Pools.
+ */
+final class Parallelism {
+
+    static final Parallelism SEQUENTIAL = new Parallelism(Integer.MAX_VALUE, null);
+
+    private final int threshold;
+    private final ForkJoinPool pool;
+
+    Parallelism(int threshold, ForkJoinPool pool) {
+        this.threshold = threshold;
+        this.pool = pool;
+    }
+
+    boolean appliesTo(int size) {
+        return pool != null && size >= threshold;
+    }
+
+    int parallelism() {
+        return pool == null ? 1 : pool.getParallelism();
+    }
+
+    <T> T run(Supplier<T> task) {
+        return pool.submit(task::get).join();
+    }
+}
@@ -1,48 +1,311 @@
 package ch.tbz.beatlog.service;
 
+import ch.tbz.beatlog.common.Dictionary;
 import ch.tbz.beatlog.domain.Song;
+import ch.tbz.beatlog.domain.SongStats;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
+/**
+ * Filter und Strategien für Playlists. Ab einer konfigurierbaren Grösse der Eingabe
+ * laufen Filtern, Sortieren und Mischen parallel in einem eigenen ForkJoinPool,
+ * kleinere Eingaben bleiben sequentiell.
+ *
+ * <p>Konfiguration: {@code playlist.parallel.threshold} (Standard 50000 Songs) und
+ * {@code playlist.parallel.threads} (Standard Anzahl Kerne, 1 = immer sequentiell),
+ * {@code playlist.duration.latencyMs} (Zeitbudget der Zielzeit-Strategie, Standard 100).
+ */
 public class PlaylistService {
 
+    private final Parallelism parallelism;
+    private final Function<Collection<String>, Map<String, SongStats>> stats;
+    private final List<SmartPlaylistStrategy> extraStrategies = new CopyOnWriteArrayList<>();
+    // hält seine Gewichtstabellen zwischen zwei Playlists, deshalb nur eine Instanz (Mood-Varianten teilen sie);
+    // muss als SessionListener registriert sein, damit neue Plays die Tabellen ungültig machen
+    private final WeightedRandomStrategy weightedRandom;
+    private final DurationTargetStrategy durationTarget;
+
+    public PlaylistService() {
+        this(new Properties());
+    }
+
+    public PlaylistService(Properties config) {
+        this(config, null);
+    }
+
+    /**
+     * @param stats Quelle für Hörstatistiken (z.B. {@code LibraryService::songStats});
+     *              ohne Quelle fehlen die Strategien, die sie brauchen
+     */
+    public PlaylistService(Properties config, Function<Collection<String>, Map<String, SongStats>> stats) {
+        this.stats = stats;
+        this.weightedRandom = new WeightedRandomStrategy(stats, null);
+        int threshold = Integer.parseInt(config.getProperty("playlist.parallel.threshold", "50000"));
+        int threads = Integer.parseInt(config.getProperty("playlist.parallel.threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        this.parallelism = threads <= 1 ? Parallelism.SEQUENTIAL
+                : new Parallelism(Math.max(threshold, 1), new ForkJoinPool(threads));
+        long latencyMs = Long.parseLong(config.getProperty("playlist.duration.latencyMs", "100"));
+        this.durationTarget = new DurationTargetStrategy(Duration.ofMinutes(60), Duration.ofMillis(latencyMs));
+    }
+
     public List<Song> filterSongs(List<Song> allSongs, String mood, Integer minRating, String tag) {
-        return allSongs.stream()
-                .filter(s -> mood == null || (s.getMood() != null && s.getMood().equalsIgnoreCase(mood)))
+        // Mood und Tag einmal auflösen, danach nur noch int-Vergleiche pro Song
+        int moodKey = Dictionary.MOODS.lookupFolded(mood);
+        int tagKey = Dictionary.TAGS.lookupFolded(tag);
+        if (!parallelism.appliesTo(allSongs.size())) {
+            return filter(allSongs.stream(), mood, moodKey, minRating, tag, tagKey);
+        }
+        return parallelism.run(() -> filter(allSongs.parallelStream(), mood, moodKey, minRating, tag, tagKey));
+    }
+
+    private static List<Song> filter(Stream<Song> songs, String mood, int moodKey, Integer minRating,
+                                     String tag, int tagKey) {
+        return songs
+                .filter(s -> mood == null || (moodKey != Dictionary.NONE && s.getMoodKey() == moodKey))
                 .filter(s -> minRating == null || s.getRating() >= minRating)
-                .filter(s -> tag == null || (s.getTags() != null && s.getTags().stream()
-                        .anyMatch(t -> t.equalsIgnoreCase(tag))))
+                .filter(s -> tag == null || s.hasTagKey(tagKey))
                 .collect(Collectors.toList());
     }
 
     public static class RandomStrategy implements SmartPlaylistStrategy {
+        private final Parallelism parallelism;
+
+        public RandomStrategy() { this(Parallelism.SEQUENTIAL); }
+        RandomStrategy(Parallelism parallelism) { this.parallelism = parallelism; }
+
         public List<Song> generate(List<Song> inputSongs) {
+            if (parallelism.appliesTo(inputSongs.size())) {
+                return parallelism.run(() -> shuffle(inputSongs, parallelism.parallelism() * 4));
+            }
             List<Song> copy = new ArrayList<>(inputSongs);
-            Collections.shuffle(copy);
+            Collections.shuffle(copy, ThreadLocalRandom.current());
             return copy;
         }
+        // Partielles Fisher–Yates: nur die ersten limit Positionen werden gezogen,
+        // vertauschte Positionen merkt sich eine kleine Map statt einer Kopie der Eingabe
+        public List<Song> generate(List<Song> inputSongs, int limit) {
+            int n = inputSongs.size();
+            int k = Math.max(0, Math.min(limit, n));
+            if (k == n) return generate(inputSongs);
+            // Bei grossem Anteil lohnt sich das parallele Mischen der ganzen Liste
+            if (k > n / 2 && parallelism.appliesTo(n)) {
+                return new ArrayList<>(generate(inputSongs).subList(0, k));
+            }
+            Random rnd = ThreadLocalRandom.current();
+            Map<Integer, Integer> swapped = new HashMap<>();
+            List<Song> out = new ArrayList<>(k);
+            for (int i = 0; i < k; i++) {
+                int j = i + rnd.nextInt(n - i);
+                int atI = swapped.getOrDefault(i, i);
+                int atJ = swapped.getOrDefault(j, j);
+                out.add(inputSongs.get(atJ));
+                swapped.put(j, atI);
+            }
+            return out;
+        }
         public String getName() { return "Zufällig"; }
     }
 
     public static class HighRatingStrategy implements SmartPlaylistStrategy {
+        private static final Comparator<Song> ORDER = Comparator.comparingInt(Song::getRating).reversed();
+        private final Parallelism parallelism;
+
+        public HighRatingStrategy() { this(Parallelism.SEQUENTIAL); }
+        HighRatingStrategy(Parallelism parallelism) { this.parallelism = parallelism; }
+
         public List<Song> generate(List<Song> inputSongs) {
-            return inputSongs.stream()
-                    .sorted(Comparator.comparingInt(Song::getRating).reversed())
-                    .collect(Collectors.toList());
+            return sorted(inputSongs, ORDER, parallelism);
+        }
+        public List<Song> generate(List<Song> inputSongs, int limit) {
+            return topK(inputSongs, limit, ORDER, parallelism);
         }
         public String getName() { return "Nach Rating absteigend"; }
     }
 
     public static class RecentYearStrategy implements SmartPlaylistStrategy {
+        private static final Comparator<Song> ORDER = Comparator.comparingInt(Song::getYear).reversed();
+        private final Parallelism parallelism;
+
+        public RecentYearStrategy() { this(Parallelism.SEQUENTIAL); }
+        RecentYearStrategy(Parallelism parallelism) { this.parallelism = parallelism; }
+
         public List<Song> generate(List<Song> inputSongs) {
-            return inputSongs.stream()
-                    .sorted(Comparator.comparingInt(Song::getYear).reversed())
-                    .collect(Collectors.toList());
+            return sorted(inputSongs, ORDER, parallelism);
+        }
+        public List<Song> generate(List<Song> inputSongs, int limit) {
+            return topK(inputSongs, limit, ORDER, parallelism);
         }
         public String getName() { return "Neueste zuerst"; }
     }
 
+    public static class MostPlayedStrategy implements SmartPlaylistStrategy {
+        private final Function<Collection<String>, Map<String, SongStats>> stats;
+        private final Parallelism parallelism;
+
+        public MostPlayedStrategy(Function<Collection<String>, Map<String, SongStats>> stats) {
+            this(stats, Parallelism.SEQUENTIAL);
+        }
+        MostPlayedStrategy(Function<Collection<String>, Map<String, SongStats>> stats, Parallelism parallelism) {
+            this.stats = stats;
+            this.parallelism = parallelism;
+        }
+
+        public List<Song> generate(List<Song> inputSongs) {
+            return sorted(inputSongs, order(inputSongs), parallelism);
+        }
+        public List<Song> generate(List<Song> inputSongs, int limit) {
+            return topK(inputSongs, limit, order(inputSongs), parallelism);
+        }
+        public String getName() { return "Meistgehört"; }
+
+        // Statistiken einmal gesammelt holen; sortiert nach Anzahl, dann zuletzt gehört
+        private Comparator<Song> order(List<Song> songs) {
+            List<String> ids = new ArrayList<>(songs.size());
+            for (Song s : songs) ids.add(s.getId());
+            Map<String, SongStats> byId = stats.apply(ids);
+            Function<Song, SongStats> of = s -> byId.getOrDefault(s.getId(), SongStats.none(s.getId()));
+            return Comparator.<Song>comparingInt(s -> of.apply(s).getPlayCount())
+                    .thenComparing(s -> of.apply(s).getLastPlayed(), Comparator.nullsFirst(Comparator.naturalOrder()))
+                    .reversed();
+        }
+    }
+
+    // Stabil sortiert; parallel über einen geordneten Stream im eigenen Pool
+    static List<Song> sorted(List<Song> input, Comparator<Song> order, Parallelism parallelism) {
+        if (!parallelism.appliesTo(input.size())) {
+            return input.stream().sorted(order).collect(Collectors.toList());
+        }
+        return parallelism.run(() -> input.parallelStream().sorted(order).collect(Collectors.toList()));
+    }
+
+    /**
+     * Paralleles top-k: jeder Block liefert seine stabil sortierten k Besten, die Kandidaten
+     * werden in Blockreihenfolge aneinandergehängt und nochmals stabil ausgewählt. Gleichstände
+     * behalten dadurch die Eingabereihenfolge.
+     */
+    static List<Song> topK(List<Song> input, int k, Comparator<Song> order, Parallelism parallelism) {
+        int n = input.size();
+        if (k <= 0 || !parallelism.appliesTo(n)) return topK(input, k, order);
+        if (k >= n) return sorted(input, order, parallelism);
+        int blocks = parallelism.parallelism() * 4;
+        int blockSize = (n + blocks - 1) / blocks;
+        List<Song> candidates = parallelism.run(() -> IntStream.range(0, blocks).parallel()
+                .mapToObj(b -> {
+                    int from = Math.min(n, b * blockSize);
+                    return topK(input.subList(from, Math.min(n, from + blockSize)), k, order);
+                })
+                .flatMap(List::stream)
+                .collect(Collectors.toList()));
+        return topK(candidates, k, order);
+    }
+
+    /**
+     * Die ersten k Songs gemäss order, stabil wie ein vollständiges Sortieren, aber in
+     * O(n log k) über einen Heap der Grösse k (Kopf = aktuell schlechtester Kandidat).
+     */
+    static List<Song> topK(List<Song> input, int k, Comparator<Song> order) {
+        int n = input.size();
+        if (k <= 0) return new ArrayList<>();
+        if (k >= n) {
+            List<Song> all = new ArrayList<>(input);
+            all.sort(order);
+            return all;
+        }
+        Comparator<Integer> rank = (a, b) -> {
+            int c = order.compare(input.get(a), input.get(b));
+            return c != 0 ? c : Integer.compare(a, b);
+        };
+        PriorityQueue<Integer> heap = new PriorityQueue<>(k, rank.reversed());
+        for (int i = 0; i < n; i++) {
+            if (heap.size() < k) {
+                heap.add(i);
+            } else if (rank.compare(i, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(i);
+            }
+        }
+        Song[] out = new Song[heap.size()];
+        for (int i = out.length - 1; i >= 0; i--) out[i] = input.get(heap.poll());
+        return new ArrayList<>(Arrays.asList(out));
+    }
+
+    /**
+     * Paralleles Mischen (Scatter-Shuffle): jeder Song landet in einem zufälligen Bucket,
+     * die Buckets werden einzeln mit Fisher–Yates gemischt und aneinandergehängt. Das ergibt
+     * eine gleichverteilte Permutation; jeder Thread zieht aus seinem ThreadLocalRandom.
+     */
+    static List<Song> shuffle(List<Song> input, int buckets) {
+        int n = input.size();
+        int chunks = buckets;
+        int chunkSize = (n + chunks - 1) / chunks;
+        int[] target = new int[n];
+        int[][] counts = new int[chunks][buckets];
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            int[] count = counts[c];
+            for (int i = c * chunkSize, end = Math.min(n, i + chunkSize); i < end; i++) {
+                int b = rnd.nextInt(buckets);
+                target[i] = b;
+                count[b]++;
+            }
+        });
+        // Schreibpositionen: Bucket für Bucket, innerhalb eines Buckets nach Block
+        int[][] next = new int[chunks][buckets];
+        int[] bucketStart = new int[buckets + 1];
+        int pos = 0;
+        for (int b = 0; b < buckets; b++) {
+            bucketStart[b] = pos;
+            for (int c = 0; c < chunks; c++) {
+                next[c][b] = pos;
+                pos += counts[c][b];
+            }
+        }
+        bucketStart[buckets] = pos;
+        Song[] out = new Song[n];
+        IntStream.range(0, chunks).parallel().forEach(c -> {
+            int[] at = next[c];
+            for (int i = c * chunkSize, end = Math.min(n, i + chunkSize); i < end; i++) {
+                out[at[target[i]]++] = input.get(i);
+            }
+        });
+        IntStream.range(0, buckets).parallel().forEach(b -> {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            int from = bucketStart[b];
+            for (int i = bucketStart[b + 1] - 1; i > from; i--) {
+                int j = from + rnd.nextInt(i - from + 1);
+                Song tmp = out[i];
+                out[i] = out[j];
+                out[j] = tmp;
+            }
+        });
+        return new ArrayList<>(Arrays.asList(out));
+    }
+
     public List<SmartPlaylistStrategy> getAvailableStrategies() {
-        return List.of(new RandomStrategy(), new HighRatingStrategy(), new RecentYearStrategy());
+        List<SmartPlaylistStrategy> strategies = new ArrayList<>(List.of(new RandomStrategy(parallelism),
+                new HighRatingStrategy(parallelism), new RecentYearStrategy(parallelism)));
+        strategies.add(weightedRandom);
+        strategies.add(durationTarget);
+        if (stats != null) strategies.add(new MostPlayedStrategy(stats, parallelism));
+        strategies.addAll(extraStrategies);
+        return strategies;
+    }
+
+    // Beim LibraryService registrieren, sonst baut die Strategie ihre Gewichte jedes Mal neu auf
+    public SessionListener getWeightedRandomListener() {
+        return weightedRandom;
+    }
+
+    // Zusätzliche Strategien, die eigenen Zustand brauchen (z.B. als SessionListener registriert)
+    public void addStrategy(SmartPlaylistStrategy strategy) {
+        extraStrategies.add(Objects.requireNonNull(strategy));
     }
 }
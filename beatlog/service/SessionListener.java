@@ -0,0 +1,19 @@
+package ch.tbz.beatlog.service;
+
+import ch.tbz.beatlog.domain.DataSnapshot;
+import ch.tbz.beatlog.domain.SessionWithSong;
+
+import java.util.List;
+
+/**
+ * Wird von {@link LibraryService} nach dem Speichern neuer Sessions benachrichtigt, damit
+ * abgeleitete Daten (Statistiken, Empfehlungen) inkrementell nachgeführt werden können.
+ */
+public interface SessionListener {
+
+    // Gespeicherte Sessions mit ihrem Song (falls vorhanden), in Log-Reihenfolge
+    void onSessionsLogged(List<SessionWithSong> sessions);
+
+    // Datenbestand wurde ersetzt (Registrierung, replaceAll, Import): alles neu aufbauen
+    void onReset(DataSnapshot snapshot);
+}
@@ -1,9 +1,16 @@
 package ch.tbz.beatlog.service;
 
 import ch.tbz.beatlog.domain.Song;
+import java.util.ArrayList;
 import java.util.List;
 
 public interface SmartPlaylistStrategy {
     List<Song> generate(List<Song> inputSongs);
     String getName();
+
+    // Höchstens limit Titel; Strategien, die nicht alles sortieren müssen, überschreiben das
+    default List<Song> generate(List<Song> inputSongs, int limit) {
+        List<Song> all = generate(inputSongs);
+        return all.size() <= limit ? all : new ArrayList<>(all.subList(0, Math.max(limit, 0)));
+    }
 }
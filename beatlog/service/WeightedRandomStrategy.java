@@ -0,0 +1,190 @@
+package ch.tbz.beatlog.service;
+
+import ch.tbz.beatlog.domain.DataSnapshot;
+import ch.tbz.beatlog.domain.SessionWithSong;
+import ch.tbz.beatlog.domain.Song;
+import ch.tbz.beatlog.domain.SongStats;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Gewichtetes Mischen ohne Zurücklegen: Songs mit höherem Gewicht landen eher vorne.
+ * Gewicht = effektives Rating × Mood-Bonus × (1 + ln(1 + Anzahl Plays)).
+ *
+ * <p>Die Gewichte liegen als ganzzahliger Fenwick-Baum vor; jede Ziehung sucht die
+ * Präfixsumme in O(log n) und nimmt den gezogenen Song mit einem Update heraus. Der Baum
+ * wird pro bevorzugtem Mood zwischengespeichert und wiederverwendet, solange dieselbe
+ * Songliste (dieselben Song-Objekte in derselben Reihenfolge) kommt und keine Session
+ * geloggt wurde; pro Playlist wird nur das Array kopiert. Varianten aus {@link #withMood}
+ * teilen sich den Zwischenspeicher. Mit Hörstatistiken wird nur zwischengespeichert, wenn
+ * die Strategie als {@link SessionListener} registriert ist, sonst wären Plays und
+ * Overrides im Baum veraltet.
+ */
+public class WeightedRandomStrategy implements SmartPlaylistStrategy, SessionListener {
+
+    private static final double MOOD_BONUS = 2.0;
+    private static final int SCALE = 1000;
+
+    private final Function<Collection<String>, Map<String, SongStats>> stats;
+    private final String preferredMood;
+
+    private static final int MAX_CACHED_MOODS = 8;
+
+    private static final class Table {
+        final Song[] songs;
+        final long[] tree;  // 1-basiert
+        final long total;
+        final long version;
+
+        Table(Song[] songs, long[] tree, long total, long version) {
+            this.songs = songs;
+            this.tree = tree;
+            this.total = total;
+            this.version = version;
+        }
+    }
+
+    // Gemeinsam für alle Mood-Varianten: Bäume pro Mood und Stand der Sessions
+    private static final class Cache {
+        final Map<String, Table> byMood = new ConcurrentHashMap<>();
+        final AtomicLong version = new AtomicLong();
+        volatile boolean tracking;
+    }
+
+    private final Cache cache;
+
+    public WeightedRandomStrategy() {
+        this(null, null);
+    }
+
+    /**
+     * @param stats         Quelle für Hörstatistiken, null = ohne Plays und Overrides
+     * @param preferredMood Songs mit diesem Mood zählen doppelt, null = kein Bonus
+     */
+    public WeightedRandomStrategy(Function<Collection<String>, Map<String, SongStats>> stats, String preferredMood) {
+        this(stats, preferredMood, new Cache());
+    }
+
+    private WeightedRandomStrategy(Function<Collection<String>, Map<String, SongStats>> stats, String preferredMood,
+                                   Cache cache) {
+        this.stats = stats;
+        this.preferredMood = preferredMood;
+        this.cache = cache;
+    }
+
+    // Gleiche Strategie mit anderem bevorzugtem Mood
+    public WeightedRandomStrategy withMood(String preferredMood) {
+        return new WeightedRandomStrategy(stats, preferredMood, cache);
+    }
+
+    public List<Song> generate(List<Song> inputSongs) {
+        return generate(inputSongs, inputSongs.size());
+    }
+
+    public List<Song> generate(List<Song> inputSongs, int limit) {
+        int k = Math.max(0, Math.min(limit, inputSongs.size()));
+        List<Song> out = new ArrayList<>(k);
+        if (k == 0) return out;
+        Table table = table(inputSongs);
+        long[] tree = table.tree.clone();
+        long remaining = table.total;
+        int n = table.songs.length;
+        int top = Integer.highestOneBit(n);
+        ThreadLocalRandom rnd = ThreadLocalRandom.current();
+        for (int drawn = 0; drawn < k; drawn++) {
+            // kleinster Index i mit Präfixsumme(i) > target
+            long target = rnd.nextLong(remaining);
+            int pos = 0;
+            for (int step = top; step > 0; step >>= 1) {
+                int next = pos + step;
+                if (next <= n && tree[next] <= target) {
+                    pos = next;
+                    target -= tree[next];
+                }
+            }
+            int index = pos + 1;
+            long weight = pointWeight(tree, index);
+            out.add(table.songs[index - 1]);
+            remaining -= weight;
+            for (int i = index; i <= n; i += i & -i) tree[i] -= weight;
+        }
+        return out;
+    }
+
+    public String getName() {
+        return preferredMood == null ? "Gewichtet zufällig" : "Gewichtet zufällig (" + preferredMood + ")";
+    }
+
+    @Override
+    public void onSessionsLogged(List<SessionWithSong> sessions) {
+        cache.version.incrementAndGet();
+    }
+
+    @Override
+    public void onReset(DataSnapshot snapshot) {
+        cache.version.incrementAndGet();
+        cache.tracking = true;
+    }
+
+    private Table table(List<Song> songs) {
+        // Stand vor dem Aufbau lesen: eine währenddessen geloggte Session macht den Baum ungültig
+        long version = cache.version.get();
+        if (stats != null && !cache.tracking) return build(songs, version);
+        String key = preferredMood == null ? "" : preferredMood.toLowerCase(Locale.ROOT);
+        Table t = cache.byMood.get(key);
+        if (t != null && t.version == version && sameSongs(t.songs, songs)) return t;
+        t = build(songs, version);
+        if (cache.byMood.size() >= MAX_CACHED_MOODS) cache.byMood.clear();
+        cache.byMood.put(key, t);
+        return t;
+    }
+
+    private static boolean sameSongs(Song[] cached, List<Song> songs) {
+        if (cached.length != songs.size()) return false;
+        int i = 0;
+        for (Song s : songs) if (cached[i++] != s) return false;
+        return true;
+    }
+
+    private Table build(List<Song> input, long version) {
+        Song[] songs = input.toArray(new Song[0]);
+        Map<String, SongStats> byId = Map.of();
+        if (stats != null) {
+            List<String> ids = new ArrayList<>(songs.length);
+            for (Song s : songs) ids.add(s.getId());
+            byId = stats.apply(ids);
+        }
+        // Linearer Aufbau: jeder Knoten gibt seine Summe an den Elternknoten weiter
+        long[] tree = new long[songs.length + 1];
+        long total = 0;
+        for (int i = 0; i < songs.length; i++) {
+            long w = weight(songs[i], byId.get(songs[i].getId()));
+            tree[i + 1] += w;
+            total += w;
+            int parent = (i + 1) + ((i + 1) & -(i + 1));
+            if (parent <= songs.length) tree[parent] += tree[i + 1];
+        }
+        return new Table(songs, tree, total, version);
+    }
+
+    private long weight(Song s, SongStats st) {
+        int rating = st == null ? s.getRating() : st.effectiveRating(s.getRating());
+        int plays = st == null ? 0 : st.getPlayCount();
+        double w = Math.max(rating, 1)
+                * (preferredMood != null && preferredMood.equalsIgnoreCase(s.getMood()) ? MOOD_BONUS : 1.0)
+                * (1 + Math.log1p(plays));
+        return Math.max(1, Math.round(w * SCALE));
+    }
+
+    // Einzelgewicht an Position index aus dem Baum zurückrechnen
+    private static long pointWeight(long[] tree, int index) {
+        long w = tree[index];
+        int stop = index - (index & -index);
+        for (int i = index - 1; i > stop; i -= i & -i) w -= tree[i];
+        return w;
+    }
+}
@@ -1,13 +1,22 @@
 package ch.tbz.beatlog.ui;
 
+import ch.tbz.beatlog.common.MergeResult;
+import ch.tbz.beatlog.common.SortOrder;
 import ch.tbz.beatlog.controller.Controller;
 import ch.tbz.beatlog.domain.Song;
 import ch.tbz.beatlog.persistence.JsonRepository;
 import ch.tbz.beatlog.persistence.Repository;
+import ch.tbz.beatlog.service.AnalyticsService;
+import ch.tbz.beatlog.service.DurationTargetStrategy;
 import ch.tbz.beatlog.service.LibraryService;
+import ch.tbz.beatlog.service.ListenedTogetherStrategy;
 import ch.tbz.beatlog.service.PlaylistService;
+import ch.tbz.beatlog.service.SessionListener;
 import ch.tbz.beatlog.service.SmartPlaylistStrategy;
+import ch.tbz.beatlog.service.WeightedRandomStrategy;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 
@@ -15,17 +24,32 @@ public class ConsoleUI {
 
     private final Scanner sc = new Scanner(System.in);
     private static final String MOOD_HINT = "(happy / sad / aggressive, optional)";
+    private static final int PAGE_SIZE = 20;
 
     public void start() {
         Properties config = new Properties();
         config.setProperty("data.dir", "data");
         config.setProperty("songs.file", "songs.json");
         config.setProperty("sessions.file", "sessions.json");
+        config.setProperty("songs.writeBehind", "true");
+        config.setProperty("load.eager", "true");
 
-        Repository repo = new JsonRepository(config);
+        try (Repository repo = new JsonRepository(config)) {
+            run(repo);
+        }
+    }
+
+    private void run(Repository repo) {
         LibraryService library = new LibraryService(repo);
         Controller controller = new Controller(library);
-        PlaylistService playlists = new PlaylistService();
+        PlaylistService playlists = new PlaylistService(new Properties(), library::songStats);
+        AnalyticsService analytics = new AnalyticsService();
+        ListenedTogetherStrategy listenedTogether = new ListenedTogetherStrategy();
+        playlists.addStrategy(listenedTogether);
+        // Listener bauen sich aus dem ganzen Bestand auf; erst bei der ersten Playlist bzw. Statistik
+        // registrieren, damit das Menü nicht auf das Vorladen der Sessions wartet
+        List<SessionListener> pendingListeners = new ArrayList<>(
+                List.of(analytics, listenedTogether, playlists.getWeightedRandomListener()));
 
         System.out.println("=== BeatLog – Songs, Sessions & Smart Playlists ===");
         while (true) {
@@ -41,6 +65,7 @@ public class ConsoleUI {
                 8) Smarte Playlist generieren
                 9) Backup exportieren (alle Daten)
                 10) Backup importieren (alle Daten)
+                11) Statistiken anzeigen
                 0) Beenden
                 """);
             System.out.print("> ");
@@ -53,10 +78,17 @@ public class ConsoleUI {
                     case "4" -> deleteSong(controller);
                     case "5" -> logSession(controller);
                     case "6" -> listSessions(controller);
-                    case "7" -> filterSongs(controller, playlists);
-                    case "8" -> generateSmartPlaylist(controller, playlists);
+                    case "7" -> filterSongs(controller);
+                    case "8" -> {
+                        registerListeners(library, pendingListeners);
+                        generateSmartPlaylist(controller, playlists);
+                    }
                     case "9" -> doBackup(library);
                     case "10" -> doRestore(library);
+                    case "11" -> {
+                        registerListeners(library, pendingListeners);
+                        showStatistics(analytics);
+                    }
                     case "0" -> { System.out.println("Tschüss!"); return; }
                     default -> System.out.println("Unbekannte Option.");
                 }
@@ -66,6 +98,11 @@ public class ConsoleUI {
         }
     }
 
+    private void registerListeners(LibraryService library, List<SessionListener> pending) {
+        for (SessionListener l : pending) library.addSessionListener(l);
+        pending.clear();
+    }
+
     private void listSongs(Controller controller) {
         List<Song> songs = controller.getAllSongs();
         if (songs.isEmpty()) {
@@ -159,32 +196,38 @@ public class ConsoleUI {
     }
 
     private void listSessions(Controller controller) {
-        var sessions = controller.getAllSessions();
-        if (sessions.isEmpty()) {
-            System.out.println("Keine Sessions vorhanden.");
-            return;
-        }
-        sessions.sort((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()));
-        int i = 1;
+        int offset = 0;
         DateTimeFormatter fmt = DateTimeFormatter.ISO_INSTANT;
-        for (var s : sessions) {
-            var songOpt = controller.getSong(s.getSongId());
-            String label = songOpt.map(x -> x.getArtist() + " — " + x.getTitle()).orElse("(Song gelöscht)");
-            System.out.printf("%d) %s | %s | Mood: %s | Note: %s%n",
-                    i++, fmt.format(s.getTimestamp()), label,
-                    s.getMood() == null ? "-" : s.getMood(),
-                    s.getNote() == null ? "-" : s.getNote());
+        while (true) {
+            var page = controller.getSessionPageWithSongs(offset, PAGE_SIZE, SortOrder.DESCENDING);
+            if (page.getTotal() == 0) {
+                System.out.println("Keine Sessions vorhanden.");
+                return;
+            }
+            int i = offset + 1;
+            for (var entry : page.getItems()) {
+                var s = entry.getSession();
+                String label = entry.getSong().map(x -> x.getArtist() + " — " + x.getTitle()).orElse("(Song gelöscht)");
+                System.out.printf("%d) %s | %s | Mood: %s | Note: %s%n",
+                        i++, fmt.format(s.getTimestamp()), label,
+                        s.getMood() == null ? "-" : s.getMood(),
+                        s.getNote() == null ? "-" : s.getNote());
+            }
+            if (!page.hasNext()) return;
+            System.out.printf("(%d von %d) Weitere anzeigen? (J/n): ", i - 1, page.getTotal());
+            if (sc.nextLine().trim().equalsIgnoreCase("n")) return;
+            offset += PAGE_SIZE;
         }
     }
 
-    private void filterSongs(Controller controller, PlaylistService playlists) {
+    private void filterSongs(Controller controller) {
         System.out.println("— Filter —");
         String mood = ask("Mood-Filter " + MOOD_HINT.replace(", optional", ""), true);
         String minRatingStr = ask("Mindest-Rating (leer = beliebig)", true);
         Integer minRating = minRatingStr.isBlank() ? null : tryParseInt(minRatingStr);
         String tag = ask("Tag (leer = beliebig)", true);
 
-        var filtered = playlists.filterSongs(controller.getAllSongs(),
+        var filtered = controller.filterSongs(
                 mood.isBlank() ? null : mood, minRating, tag.isBlank() ? null : tag);
 
         System.out.printf("Filter angewendet → %d Treffer%n", filtered.size());
@@ -211,6 +254,12 @@ public class ConsoleUI {
         }
         int choice = askInt("Strategie wählen", 1, strategies.size());
         SmartPlaylistStrategy strategy = strategies.get(choice - 1);
+        if (strategy instanceof DurationTargetStrategy timed) {
+            strategy = timed.withTarget(Duration.ofMinutes(askInt("Zielzeit in Minuten", 1, 24 * 60)));
+        } else if (strategy instanceof WeightedRandomStrategy weighted) {
+            String preferred = ask("Bevorzugter Mood, zählt doppelt " + MOOD_HINT, true);
+            strategy = weighted.withMood(preferred.isBlank() ? null : preferred);
+        }
         System.out.println("Strategie: " + strategy.getName());
 
         String mood = ask("Mood-Filter " + MOOD_HINT.replace(", optional", ""), true);
@@ -218,7 +267,7 @@ public class ConsoleUI {
         Integer minRating = minRatingStr.isBlank() ? null : tryParseInt(minRatingStr);
         String tag = ask("Tag-Filter (leer = keiner)", true);
 
-        var filtered = playlists.filterSongs(all,
+        var filtered = controller.filterSongs(
                 mood.isBlank() ? null : mood, minRating, tag.isBlank() ? null : tag);
 
         System.out.printf("Vor Strategie: %d Songs nach Filter%n", filtered.size());
@@ -227,7 +276,9 @@ public class ConsoleUI {
             return;
         }
 
-        var playlist = strategy.generate(filtered);
+        String limitStr = ask("Anzahl Titel (leer = alle)", true);
+        Integer limit = limitStr.isBlank() ? null : tryParseInt(limitStr);
+        var playlist = limit == null ? strategy.generate(filtered) : strategy.generate(filtered, limit);
 
         System.out.println("\n🎧 Playlist – " + strategy.getName() + " (" + playlist.size() + " Titel)");
         int i = 1;
@@ -237,6 +288,20 @@ public class ConsoleUI {
         }
     }
 
+    private void showStatistics(AnalyticsService analytics) {
+        System.out.println("— Statistiken — (" + analytics.getTotalPlays() + " Sessions total)");
+        LocalDate today = LocalDate.now();
+        System.out.println("Letzte 7 Tage:");
+        analytics.playsPerDay(today.minusDays(6), today)
+                .forEach((day, n) -> System.out.printf("  %s: %d%n", day, n));
+        System.out.println("Top Artists:");
+        analytics.topArtists(5).forEach((artist, n) -> System.out.printf("  %s: %d%n", artist, n));
+        System.out.println("Top Moods:");
+        analytics.topMoods(5).forEach((mood, n) -> System.out.printf("  %s: %d%n", mood, n));
+        System.out.println("Genres:");
+        analytics.genreDistribution().forEach((genre, n) -> System.out.printf("  %s: %d%n", genre, n));
+    }
+
     private void doBackup(LibraryService library) {
         String path = ask("Export-Datei (Standard: data/backup.json)", true);
         if (path.isBlank()) path = "data/backup.json";
@@ -252,8 +317,9 @@ public class ConsoleUI {
             System.out.println("Abgebrochen.");
             return;
         }
-        library.restoreFromFile(path);
-        System.out.println("Import abgeschlossen.");
+        // gleicher Endstand wie ein vollständiger Import, geschrieben wird aber nur die Differenz
+        MergeResult result = library.mergeFromFile(path);
+        System.out.println("Import abgeschlossen. " + result);
     }
 
     private String ask(String label, boolean optional) {
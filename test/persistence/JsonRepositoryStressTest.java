@@ -0,0 +1,114 @@
+package ch.tbz.beatlog.persistence;
+
+import ch.tbz.beatlog.domain.ListeningSession;
+import ch.tbz.beatlog.domain.Song;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Stresstest für {@link JsonRepository}: 8 Schreiber und 2 Leser gleichzeitig, danach
+ * wird geprüft, dass kein Song und keine Session verloren ging, weder im Speicher noch
+ * nach dem Neuladen. Läuft einmal mit sofortigem Schreiben und einmal mit Write-Behind.
+ *
+ * <p>Kein Test-Framework im Projekt, deshalb als main-Klasse; Exit-Code 1 bei Fehler:
+ * <pre>
+ * javac -cp gson.jar -d out $(find beatlog test -name '*.java')
+ * java -cp out:gson.jar ch.tbz.beatlog.persistence.JsonRepositoryStressTest
+ * </pre>
+ */
+public class JsonRepositoryStressTest {
+
+    private static final int WRITERS = 8;
+    private static final int READERS = 2;
+    // Ohne Write-Behind schreibt jedes saveSong die ganze Songdatei neu (mit fsync), deshalb weniger
+    private static final int PER_WRITER_IMMEDIATE = 250;
+    private static final int PER_WRITER_WRITE_BEHIND = 1000;
+
+    public static void main(String[] args) throws Exception {
+        List<String> failures = new ArrayList<>();
+        run("sofort", false, PER_WRITER_IMMEDIATE, failures);
+        run("write-behind", true, PER_WRITER_WRITE_BEHIND, failures);
+        if (!failures.isEmpty()) {
+            failures.forEach(f -> System.err.println("FEHLER: " + f));
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    private static void run(String label, boolean writeBehind, int perWriter, List<String> failures) throws Exception {
+        Path dir = Files.createTempDirectory("beatlog-stress");
+        Properties config = new Properties();
+        config.setProperty("data.dir", dir.toString());
+        config.setProperty("songs.writeBehind", String.valueOf(writeBehind));
+        config.setProperty("journal.compact.threshold", "500");
+
+        try (JsonRepository repo = new JsonRepository(config)) {
+            ExecutorService pool = Executors.newFixedThreadPool(WRITERS + READERS);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> tasks = new ArrayList<>();
+            for (int w = 0; w < WRITERS; w++) {
+                int writer = w;
+                tasks.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < perWriter; i++) {
+                        String songId = "s" + writer + "-" + i;
+                        repo.saveSong(new Song(songId, "T", "A", "G", 2000, 100, "happy", 5, Set.of("x")));
+                        repo.saveSession(new ListeningSession("x" + writer + "-" + i, songId, Instant.now(), null, null, null));
+                        // eigener Schreibvorgang muss sofort sichtbar sein
+                        if (repo.findSongById(songId).isEmpty()) throw new IllegalStateException("Song nicht sichtbar: " + songId);
+                    }
+                    return null;
+                }));
+            }
+            for (int r = 0; r < READERS; r++) {
+                tasks.add(pool.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 2000; i++) {
+                        repo.loadAllSongs().size();
+                        for (ListeningSession s : repo.loadAllSessions()) Objects.requireNonNull(s.getSongId());
+                        repo.filterSongs("happy", 3, "x");
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : tasks) {
+                try {
+                    f.get();
+                } catch (ExecutionException e) {
+                    failures.add(label + ": " + e.getCause());
+                }
+            }
+            pool.shutdown();
+            check(label + " im Speicher", repo, perWriter, failures);
+        }
+        try (JsonRepository reloaded = new JsonRepository(config)) {
+            check(label + " nach Neuladen", reloaded, perWriter, failures);
+        }
+    }
+
+    private static void check(String label, JsonRepository repo, int perWriter, List<String> failures) {
+        int expected = WRITERS * perWriter;
+        Set<String> songIds = new HashSet<>();
+        for (Song s : repo.loadAllSongs()) songIds.add(s.getId());
+        Set<String> sessionIds = new HashSet<>();
+        for (ListeningSession s : repo.loadAllSessions()) sessionIds.add(s.getId());
+        for (int w = 0; w < WRITERS; w++) {
+            for (int i = 0; i < perWriter; i++) {
+                if (!songIds.contains("s" + w + "-" + i)) failures.add(label + ": Song fehlt s" + w + "-" + i);
+                if (!sessionIds.contains("x" + w + "-" + i)) failures.add(label + ": Session fehlt x" + w + "-" + i);
+            }
+        }
+        if (songIds.size() != expected) failures.add(label + ": " + songIds.size() + " Songs statt " + expected);
+        if (repo.loadAllSessions().size() != expected) {
+            failures.add(label + ": " + repo.loadAllSessions().size() + " Sessions statt " + expected);
+        }
+        int filtered = repo.filterSongs("HAPPY", 5, "X").size();
+        if (filtered != expected) failures.add(label + ": Index liefert " + filtered + " statt " + expected);
+        System.out.println(label + ": " + songIds.size() + " Songs, " + sessionIds.size() + " Sessions");
+    }
+}